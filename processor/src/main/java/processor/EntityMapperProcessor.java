@@ -0,0 +1,319 @@
+package processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor that generates a typed entity mapper for every class annotated with {@code dataModel.Entity}.
+ * For an entity {@code Client} it writes {@code dataAccess.ClientMapper}, which creates entities from rows,
+ * binds them to insert and update statements, reads their values for change detection and assigns
+ * generated ids and optimistic lock versions through plain getter and setter calls.
+ * {@code dataAccess.EntityMapper} loads the generated class by name and falls back to reflection without it.
+ * This processor is compiled separately and put on the annotation processor path of the application build.
+ */
+
+@SupportedAnnotationTypes(EntityMapperProcessor.ENTITY)
+@SupportedSourceVersion(SourceVersion.RELEASE_17)
+public class EntityMapperProcessor extends AbstractProcessor {
+
+    static final String ENTITY = "dataModel.Entity";
+    private static final String TARGET_PACKAGE = "dataAccess";
+    private static final String ID = "id";
+    private static final String VERSION = "version";
+
+    /**
+     * A mapped field of an entity with its column and accessors.
+     *
+     * @param column the snake_case column name
+     * @param type the field type
+     * @param getter the name of the getter
+     * @param setter the name of the setter
+     */
+
+    private record Property(String column, TypeMirror type, String getter, String setter) {
+    }
+
+    /**
+     * Generates the mappers of the entities annotated in this round.
+     *
+     * @param annotations the annotation types requested by this processor
+     * @param roundEnv the environment of the current round
+     * @return {@code true}, the annotation is claimed by this processor
+     */
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@Entity can only be applied to classes");
+                    continue;
+                }
+                TypeElement entity = (TypeElement) element;
+                List<Property> properties = collectProperties(entity);
+                if (properties != null) {
+                    writeMapper(entity, properties);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the mapped properties of the entity, reporting an error for every missing accessor.
+     *
+     * @param entity the entity class
+     * @return the properties in field declaration order, or null if the entity cannot be mapped
+     */
+
+    private List<Property> collectProperties(TypeElement entity) {
+        Map<String, ExecutableElement> methods = new HashMap<>();
+        boolean hasDefaultConstructor = false;
+        for (ExecutableElement method : ElementFilter.methodsIn(entity.getEnclosedElements())) {
+            methods.put(method.getSimpleName() + "/" + method.getParameters().size(), method);
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasDefaultConstructor = true;
+            }
+        }
+        boolean valid = true;
+        if (!hasDefaultConstructor) {
+            error(entity, "@Entity classes need a non-private default constructor");
+            valid = false;
+        }
+        List<Property> properties = new ArrayList<>();
+        boolean hasId = false;
+        for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            String setter = "set" + capitalized;
+            String getter = methods.containsKey("get" + capitalized + "/0") ? "get" + capitalized : "is" + capitalized;
+            if (!methods.containsKey(setter + "/1") || !methods.containsKey(getter + "/0")) {
+                error(field, "Field " + name + " needs a getter and a setter");
+                valid = false;
+                continue;
+            }
+            if (name.equals(ID)) {
+                if (field.asType().getKind() != TypeKind.INT) {
+                    error(field, "The id field must be an int");
+                    valid = false;
+                }
+                hasId = true;
+            }
+            if (name.equals(VERSION) && field.asType().getKind() != TypeKind.INT) {
+                error(field, "The version field must be an int");
+                valid = false;
+            }
+            properties.add(new Property(toSnakeCase(name), field.asType(), getter, setter));
+        }
+        if (!hasId) {
+            error(entity, "@Entity classes need an int id field");
+            valid = false;
+        }
+        return valid ? properties : null;
+    }
+
+    /**
+     * Writes the source of the mapper of the entity.
+     *
+     * @param entity the entity class
+     * @param properties the mapped properties
+     */
+
+    private void writeMapper(TypeElement entity, List<Property> properties) {
+        String entityName = entity.getQualifiedName().toString();
+        String simpleName = entity.getSimpleName().toString();
+        String mapperName = simpleName + "Mapper";
+        List<String> columns = new ArrayList<>();
+        List<String> valueColumns = new ArrayList<>();
+        StringBuilder mapRow = new StringBuilder();
+        StringBuilder bindValues = new StringBuilder();
+        List<String> values = new ArrayList<>();
+        String idSetter = null;
+        String versionSetter = null;
+        int parameter = 1;
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            columns.add('"' + property.column() + '"');
+            mapRow.append(readColumn(property, i));
+            if (property.column().equals(ID)) {
+                idSetter = property.setter();
+            } else {
+                valueColumns.add('"' + property.column() + '"');
+                bindValues.append(bindParameter(property, parameter++));
+                values.add("entity." + property.getter() + "()");
+                if (property.column().equals(VERSION)) {
+                    versionSetter = property.setter();
+                }
+            }
+        }
+
+        String source = "package " + TARGET_PACKAGE + ";\n\n"
+                + "import java.sql.PreparedStatement;\n"
+                + "import java.sql.ResultSet;\n"
+                + "import java.sql.SQLException;\n\n"
+                + "/**\n"
+                + " * Entity mapper for {@link " + entityName + "}, generated by " + getClass().getName() + ".\n"
+                + " */\n\n"
+                + "final class " + mapperName + " extends EntityMapper<" + entityName + "> {\n\n"
+                + "    " + mapperName + "() {\n"
+                + "        super(\"" + simpleName.toLowerCase() + "\",\n"
+                + "                new String[]{" + String.join(", ", columns) + "},\n"
+                + "                new String[]{" + String.join(", ", valueColumns) + "});\n"
+                + "    }\n\n"
+                + "    @Override\n"
+                + "    " + entityName + " mapRow(ResultSet resultSet, int[] indexes) throws SQLException {\n"
+                + "        " + entityName + " entity = new " + entityName + "();\n"
+                + "        try {\n"
+                + mapRow
+                + "        } catch (IllegalArgumentException e) {\n"
+                + "            throw new SQLException(\"Mapping failed for " + simpleName + "\", e);\n"
+                + "        }\n"
+                + "        return entity;\n"
+                + "    }\n\n"
+                + "    @Override\n"
+                + "    void bindValues(PreparedStatement statement, " + entityName + " entity) throws SQLException {\n"
+                + bindValues
+                + "    }\n\n"
+                + "    @Override\n"
+                + "    Object[] values(" + entityName + " entity) {\n"
+                + "        return new Object[]{" + String.join(", ", values) + "};\n"
+                + "    }\n\n"
+                + "    @Override\n"
+                + "    void setVersion(" + entityName + " entity, int version) {\n"
+                + (versionSetter != null
+                        ? "        entity." + versionSetter + "(version);\n"
+                        : "        throw new UnsupportedOperationException(\"" + simpleName + " is not versioned\");\n")
+                + "    }\n\n"
+                + "    @Override\n"
+                + "    void setId(" + entityName + " entity, int id) {\n"
+                + "        entity." + idSetter + "(id);\n"
+                + "    }\n"
+                + "}\n";
+
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(TARGET_PACKAGE + "." + mapperName, entity).openWriter()) {
+            writer.write(source);
+        } catch (IOException e) {
+            error(entity, "Failed to write " + mapperName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Generates the statements reading one column into the entity. Null columns leave the field untouched.
+     *
+     * @param property the mapped property
+     * @param index the position of the column in the index array
+     * @return the generated statements
+     */
+
+    private String readColumn(Property property, int index) {
+        String variable = "v" + index;
+        String column = "indexes[" + index + "]";
+        String primitive = jdbcPrimitive(property.type());
+        if (primitive != null) {
+            return "            " + property.type() + " " + variable + " = resultSet.get" + primitive + "(" + column + ");\n"
+                    + "            if (!resultSet.wasNull()) {\n"
+                    + "                entity." + property.setter() + "(" + variable + ");\n"
+                    + "            }\n";
+        }
+        String type = processingEnv.getTypeUtils().erasure(property.type()).toString();
+        String read;
+        String value = variable;
+        switch (type) {
+            case "java.lang.String" -> read = "resultSet.getString(" + column + ")";
+            case "java.math.BigDecimal" -> read = "resultSet.getBigDecimal(" + column + ")";
+            case "java.time.LocalDateTime" -> {
+                read = "resultSet.getTimestamp(" + column + ")";
+                type = "java.sql.Timestamp";
+                value = variable + ".toLocalDateTime()";
+            }
+            default -> read = "resultSet.getObject(" + column + ", " + type + ".class)";
+        }
+        return "            " + type + " " + variable + " = " + read + ";\n"
+                + "            if (" + variable + " != null) {\n"
+                + "                entity." + property.setter() + "(" + value + ");\n"
+                + "            }\n";
+    }
+
+    /**
+     * Generates the statement binding one property to a statement parameter.
+     *
+     * @param property the mapped property
+     * @param parameter the index of the parameter
+     * @return the generated statement
+     */
+
+    private String bindParameter(Property property, int parameter) {
+        String primitive = jdbcPrimitive(property.type());
+        String setter = primitive != null ? "set" + primitive
+                : property.type().toString().equals("java.lang.String") ? "setString" : "setObject";
+        return "        statement." + setter + "(" + parameter + ", entity." + property.getter() + "());\n";
+    }
+
+    /**
+     * Gets the suffix of the JDBC getter and setter of a primitive type.
+     *
+     * @param type the field type
+     * @return the suffix, such as {@code Int}, or null if the type is not primitive
+     */
+
+    private static String jdbcPrimitive(TypeMirror type) {
+        return switch (type.getKind()) {
+            case INT -> "Int";
+            case LONG -> "Long";
+            case DOUBLE -> "Double";
+            case FLOAT -> "Float";
+            case SHORT -> "Short";
+            case BYTE -> "Byte";
+            case BOOLEAN -> "Boolean";
+            default -> null;
+        };
+    }
+
+    /**
+     * Converts camelCase field name to snake_case to match database column names.
+     *
+     * @param fieldName the camelCase field name to be converted
+     * @return the snake_case field name
+     */
+
+    private static String toSnakeCase(String fieldName) {
+        return fieldName.replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase();
+    }
+
+    /**
+     * Reports a compilation error on the given element.
+     *
+     * @param element the element causing the error
+     * @param message the error message
+     */
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
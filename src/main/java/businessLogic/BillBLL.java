@@ -1,10 +1,16 @@
 package businessLogic;
 
 import dataAccess.BillDAO;
+import dataAccess.ExportFormat;
 import dataModel.Bill;
 
-import java.sql.Connection;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,14 +24,12 @@ public class BillBLL {
     private final BillDAO billDAO;
 
     /**
-     * Constructs a BillBLL instance with the given database connection.
-     * Initializes the BillDAO to interact with the database.
-     *
-     * @param connection the connection to the database
+     * Constructs a BillBLL instance.
+     * Initializes the BillDAO, which borrows a pooled connection for every operation.
      */
 
-    public BillBLL(Connection connection) {
-        this.billDAO = new BillDAO(connection);
+    public BillBLL() {
+        this.billDAO = new BillDAO();
     }
 
     /**
@@ -43,4 +47,41 @@ public class BillBLL {
             throw new RuntimeException("Database error, e");
         }
     }
+
+    /**
+     * Retrieves the bills of the given orders from the database with a single query.
+     *
+     * @param orderIds the IDs of the orders
+     * @return the bills keyed by the ID of their order
+     */
+
+    public Map<Integer, Bill> getBillsByOrderIds(Collection<Integer> orderIds) {
+        try {
+            return billDAO.findByOrderIDs(orderIds);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to fetch bills by order ids: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Exports the bills issued in the given period to a file, streamed by the database with {@code COPY}.
+     * No bill objects are created, so memory use does not grow with the number of bills.
+     *
+     * @param file the file to write, replaced if it exists
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param format the format of the file
+     * @return the number of bills exported
+     * @throws IOException if the file cannot be written
+     */
+
+    public long exportBills(Path file, LocalDateTime from, LocalDateTime to, ExportFormat format) throws IOException {
+        try(OutputStream out = Exports.open(file)) {
+            return billDAO.exportTo(out, from, to, format);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to export bills: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
 }
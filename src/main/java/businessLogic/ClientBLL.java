@@ -1,17 +1,28 @@
 package businessLogic;
 
 import dataAccess.ClientDAO;
+import dataModel.CacheStats;
 import dataModel.Client;
+import dataModel.ImportReport;
 
-import java.sql.Connection;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Business Logic Layer for managing clients.
  * This class handles operations related to client management: adding, updating, deleting, and fetching clients.
+ * Lookups by ID are served from a cache shared by every instance for {@code cache.ttlMs},
+ * and every write made through this class invalidates the clients it changes.
  */
 
 public class ClientBLL {
@@ -20,14 +31,14 @@ public class ClientBLL {
     private final ClientDAO clientDAO;
 
     /**
-     * Constructs a ClientBLL instance with the given database connection.
-     * Initializes the ClientDAO to interact with the database.
-     *
-     * @param connection the connection to the database
+     * Constructs a ClientBLL instance.
+     * Initializes the ClientDAO, which borrows a pooled connection for every operation.
+     * The shared caches are subscribed to the change notifications of other instances.
      */
 
-    public ClientBLL(Connection connection) {
-        this.clientDAO = new ClientDAO(connection);
+    public ClientBLL() {
+        this.clientDAO = new ClientDAO();
+        EntityCaches.listen();
     }
 
     /**
@@ -42,7 +53,9 @@ public class ClientBLL {
     public Client addClient(Client client) throws IllegalArgumentException {
         try {
             validateClient(client);
-            return clientDAO.insert(client);
+            Client saved = clientDAO.insert(client);
+            EntityCaches.CLIENTS.invalidate(saved.getId());
+            return saved;
         } catch(SQLException e) {
             LOGGER.log(Level.SEVERE,"Failed to add client: " + e.getMessage());
             throw new RuntimeException("Database error", e);
@@ -66,6 +79,112 @@ public class ClientBLL {
         } catch(SQLException e) {
             LOGGER.log(Level.SEVERE,"Failed to update client: " + e.getMessage());
             throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.CLIENTS.invalidate(id);
+        }
+    }
+
+    /**
+     * Updates an existing client after validating its data, writing only the fields that differ from
+     * the client as it was read.
+     *
+     * @param client the updated client data
+     * @param original the client as it was read from the database
+     * @return the updated client
+     * @throws IllegalArgumentException if the provided client data is invalid
+     * @throws RuntimeException if there is a database error
+     */
+
+    public Client updateClient(Client client, Client original) throws IllegalArgumentException {
+        try {
+            validateClient(client);
+            return clientDAO.update(client, original, original.getId());
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to update client: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.CLIENTS.invalidate(original.getId());
+        }
+    }
+
+    /**
+     * Adds all the given clients to the database in JDBC batches.
+     * Every client is validated before anything is written, and the clients are inserted in a single transaction.
+     *
+     * @param clients the clients to be added
+     * @return the added clients with their generated IDs
+     * @throws IllegalArgumentException if the data of any client is invalid
+     * @throws RuntimeException if there is a database error
+     */
+
+    public List<Client> addClients(List<Client> clients) throws IllegalArgumentException {
+        try {
+            validateClients(clients);
+            List<Client> saved = clientDAO.insertAll(clients);
+            EntityCaches.CLIENTS.invalidateAll(saved.stream().map(Client::getId).toList());
+            return saved;
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to add clients: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Updates all the given clients in the database in JDBC batches.
+     * Every client is validated before anything is written, and the clients are updated in a single transaction.
+     *
+     * @param clients the updated client data, keyed by the ID of the client to be updated
+     * @return the updated clients
+     * @throws IllegalArgumentException if the data of any client is invalid
+     * @throws RuntimeException if there is a database error
+     */
+
+    public Map<Integer, Client> updateClients(Map<Integer, Client> clients) throws IllegalArgumentException {
+        try {
+            validateClients(clients.values());
+            return clientDAO.updateAll(clients);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to update clients: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.CLIENTS.invalidateAll(clients.keySet());
+        }
+    }
+
+    /**
+     * Imports clients from a CSV file with the columns name,address,email,age, after a header line.
+     * The file is streamed into the database with {@code COPY}, so memory use does not depend on its size.
+     * Every row is validated with the same rules as {@link #addClient(Client)}; invalid rows are reported
+     * as rejects and the valid rows are still imported.
+     *
+     * @param csvFile the path of the CSV file
+     * @return the import report with the throughput and the rejected rows
+     * @throws IOException if the file cannot be read
+     * @throws RuntimeException if there is a database error, in which case nothing is imported
+     */
+
+    public ImportReport importClients(Path csvFile) throws IOException {
+        long start = System.nanoTime();
+        try(BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            CsvRecords<Client> records = new CsvRecords<>(reader, fields -> {
+                CsvRecords.requireFields(fields, 4);
+                Client client = new Client(fields.get(0), fields.get(1), fields.get(2),
+                        CsvRecords.parseInt(fields.get(3), "Age"));
+                validateClient(client);
+                return client;
+            });
+            int imported = clientDAO.bulkImport(records);
+            ImportReport report = new ImportReport(records.getRowsRead(), imported, records.getRejects(),
+                    (System.nanoTime() - start) / 1_000_000);
+            LOGGER.log(Level.INFO, "Imported clients from " + csvFile + ": " + report);
+            return report;
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to import clients: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.CLIENTS.invalidateAll();
         }
     }
 
@@ -77,27 +196,62 @@ public class ClientBLL {
 
     public void deleteClient(int id) {
         clientDAO.delete(id);
+        EntityCaches.CLIENTS.invalidate(id);
     }
 
     /**
-     * Retrieves all clients from the database.
+     * Retrieves all clients, from the cache if none of them changed since they were last read.
      *
      * @return a list of all clients
      */
 
     public List<Client> getAllClients() {
-        return clientDAO.findAll();
+        return EntityCaches.CLIENTS.getAll(clientDAO::findAll, Client::getId);
     }
 
     /**
-     * Retrieves a client by its ID.
+     * Retrieves a page of clients sorted by ID, starting after the given ID.
+     *
+     * @param afterId the ID of the last client of the previous page, or 0 for the first page
+     * @param limit the maximum number of clients in the page
+     * @return the clients of the page
+     */
+
+    public List<Client> getClientsPage(int afterId, int limit) {
+        return clientDAO.findPage(afterId, limit);
+    }
+
+    /**
+     * Retrieves a client by its ID, from the cache if it was read recently.
      *
      * @param id the ID of the client
-     * @return the client with the given ID
+     * @return the client with the given ID, or null if it does not exist
      */
 
     public Client findById(int id) {
-        return clientDAO.findById(id);
+        return EntityCaches.CLIENTS.get(id, clientDAO::findById);
+    }
+
+    /**
+     * Retrieves the clients with the given IDs, reading the ones that are not cached
+     * with a single query per chunk of IDs.
+     *
+     * @param ids the IDs of the clients
+     * @return the clients keyed by ID
+     */
+
+    public Map<Integer, Client> findByIds(Collection<Integer> ids) {
+        return EntityCaches.CLIENTS.getAll(ids, clientDAO::findByIds);
+    }
+
+    /**
+     * Gets the hits, misses and evictions of the client cache.
+     *
+     * @return the statistics of the client cache
+     */
+
+    public CacheStats getCacheStats() {
+        return EntityCaches.CLIENTS.stats();
     }
 
     /**
@@ -118,4 +272,23 @@ public class ClientBLL {
             throw new IllegalArgumentException("Age must be between 1 and 100");
         }
     }
+
+    /**
+     * Validates every client of a bulk operation, reporting the position of the first invalid one.
+     *
+     * @param clients the clients to be validated
+     * @throws IllegalArgumentException if any client is invalid
+     */
+
+    private void validateClients(Collection<Client> clients) throws IllegalArgumentException {
+        int row = 0;
+        for(Client client : clients) {
+            try {
+                validateClient(client);
+            } catch(IllegalArgumentException e) {
+                throw new IllegalArgumentException("Row " + row + ": " + e.getMessage(), e);
+            }
+            row++;
+        }
+    }
 }
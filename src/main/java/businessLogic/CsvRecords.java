@@ -0,0 +1,214 @@
+package businessLogic;
+
+import dataModel.ImportReport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Reads the records of a CSV file one at a time and converts them to entities.
+ * Records that cannot be converted or fail validation are collected as rejects instead of stopping the read.
+ * The first line is a header and is skipped. Quoted fields may contain commas, quotes and line breaks.
+ *
+ * @param <T> the type of the converted records
+ */
+
+class CsvRecords<T> implements Iterator<T> {
+
+    private final BufferedReader reader;
+    private final Function<List<String>, T> converter;
+    private final List<ImportReport.Reject> rejects = new ArrayList<>();
+    private long line;
+    private long rowsRead;
+    private T next;
+
+    /**
+     * Constructs a CsvRecords reader and skips the header line.
+     *
+     * @param reader the reader of the CSV file
+     * @param converter converts and validates the fields of a record, throwing
+     *                  {@link IllegalArgumentException} for an invalid record
+     * @throws IOException if the file cannot be read
+     */
+
+    CsvRecords(BufferedReader reader, Function<List<String>, T> converter) throws IOException {
+        this.reader = reader;
+        this.converter = converter;
+        readRecord();
+    }
+
+    /**
+     * Checks whether another valid record is available, rejecting the invalid records before it.
+     *
+     * @return {@code true} if there is another valid record
+     */
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                long recordLine = line + 1;
+                List<String> fields = readRecord();
+                if (fields == null) {
+                    return false;
+                }
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    continue;
+                }
+                rowsRead++;
+                try {
+                    next = converter.apply(fields);
+                } catch (IllegalArgumentException e) {
+                    rejects.add(new ImportReport.Reject(recordLine, e.getMessage()));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the next valid record.
+     *
+     * @return the converted record
+     */
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Gets the rejected records read so far.
+     *
+     * @return the rejects with their line number
+     */
+
+    List<ImportReport.Reject> getRejects() {
+        return rejects;
+    }
+
+    /**
+     * Gets the number of data records read so far, valid or not.
+     *
+     * @return the number of records read
+     */
+
+    long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Checks that a record has the expected number of fields.
+     *
+     * @param fields the fields of the record
+     * @param count the expected number of fields
+     * @throws IllegalArgumentException if the number of fields differs
+     */
+
+    static void requireFields(List<String> fields, int count) throws IllegalArgumentException {
+        if (fields.size() != count) {
+            throw new IllegalArgumentException("Expected " + count + " fields but found " + fields.size());
+        }
+    }
+
+    /**
+     * Parses an integer field.
+     *
+     * @param value the text of the field
+     * @param name the name of the field, used in the error message
+     * @return the parsed value
+     * @throws IllegalArgumentException if the field is not a valid integer
+     */
+
+    static int parseInt(String value, String name) throws IllegalArgumentException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a valid integer");
+        }
+    }
+
+    /**
+     * Parses a decimal number field.
+     *
+     * @param value the text of the field
+     * @param name the name of the field, used in the error message
+     * @return the parsed value
+     * @throws IllegalArgumentException if the field is not a valid number
+     */
+
+    static double parseDouble(String value, String name) throws IllegalArgumentException {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a valid number");
+        }
+    }
+
+    /**
+     * Reads the fields of the next record.
+     *
+     * @return the fields, or null at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+
+    private List<String> readRecord() throws IOException {
+        String text = reader.readLine();
+        if (text == null) {
+            return null;
+        }
+        line++;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == text.length()) {
+                if (!quoted) {
+                    break;
+                }
+                text = reader.readLine();
+                if (text == null) {
+                    throw new IOException("Unterminated quoted field at line " + line);
+                }
+                line++;
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c == '"' && i < text.length() && text.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
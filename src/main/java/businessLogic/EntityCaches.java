@@ -0,0 +1,109 @@
+package businessLogic;
+
+import connection.ConnectionFactory;
+import dataModel.ChangeEvent;
+import dataModel.Client;
+import dataModel.Product;
+
+/**
+ * Holds the caches shared by every business logic instance, so a write through one instance invalidates
+ * what the others read. The stock of a product changes with every order, while its name and price rarely do,
+ * so the stock is kept in its own cache with a much shorter time to live than the product it belongs to.
+ * Changes made by other instances arrive through the {@link connection.ChangeListener} and invalidate
+ * only the entries they affect; a stock change of a product leaves its name and price cached.
+ */
+
+final class EntityCaches {
+
+    static final ReadThroughCache<Integer, Product> PRODUCTS = new ReadThroughCache<>("products",
+            ConnectionFactory.getIntProperty("cache.maxEntries", 10000),
+            ConnectionFactory.getIntProperty("cache.ttlMs", 300000),
+            EntityCaches::copy);
+
+    static final ReadThroughCache<Integer, Integer> STOCK = new ReadThroughCache<>("stock",
+            ConnectionFactory.getIntProperty("cache.maxEntries", 10000),
+            ConnectionFactory.getIntProperty("cache.stockTtlMs", 1000),
+            stock -> stock);
+
+    static final ReadThroughCache<Integer, Client> CLIENTS = new ReadThroughCache<>("clients",
+            ConnectionFactory.getIntProperty("cache.maxEntries", 10000),
+            ConnectionFactory.getIntProperty("cache.ttlMs", 300000),
+            EntityCaches::copy);
+
+    private static boolean listening;
+
+    /**
+     * Prevents instantiation.
+     */
+
+    private EntityCaches() {
+    }
+
+    /**
+     * Subscribes the caches to the change notifications of the database, once.
+     * Business logic constructors call this before any window subscribes, so the caches are already invalidated
+     * when a window reads the changed rows.
+     */
+
+    static synchronized void listen() {
+        if(!listening) {
+            ConnectionFactory.getChangeListener().subscribe(EntityCaches::invalidate);
+            listening = true;
+        }
+    }
+
+    /**
+     * Invalidates the entries affected by a change made by any instance.
+     *
+     * @param event the change event
+     */
+
+    private static void invalidate(ChangeEvent event) {
+        if(event.operation() == ChangeEvent.Operation.RESYNC) {
+            if(event.affects("product")) {
+                PRODUCTS.invalidateAll();
+                STOCK.invalidateAll();
+            }
+            if(event.affects("client")) {
+                CLIENTS.invalidateAll();
+            }
+            return;
+        }
+        switch(event.table()) {
+            case "product" -> {
+                if(event.operation() != ChangeEvent.Operation.STOCK) {
+                    PRODUCTS.invalidate(event.id());
+                }
+                STOCK.invalidate(event.id());
+            }
+            case "client" -> CLIENTS.invalidate(event.id());
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Copies a product, including its version.
+     *
+     * @param product the product to copy
+     * @return the copy
+     */
+
+    private static Product copy(Product product) {
+        Product copy = new Product(product.getId(), product.getProductName(), product.getPrice(),
+                product.getCurrentStock());
+        copy.setVersion(product.getVersion());
+        return copy;
+    }
+
+    /**
+     * Copies a client.
+     *
+     * @param client the client to copy
+     * @return the copy
+     */
+
+    private static Client copy(Client client) {
+        return new Client(client.getId(), client.getName(), client.getAddress(), client.getEmail(), client.getAge());
+    }
+}
@@ -0,0 +1,39 @@
+package businessLogic;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens the files written by the exports of the business logic layer.
+ */
+
+final class Exports {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Prevents instantiation.
+     */
+
+    private Exports() {
+    }
+
+    /**
+     * Opens a buffered stream writing to a file channel, replacing the file if it exists.
+     *
+     * @param file the file to write
+     * @return the stream writing to the file
+     * @throws IOException if the file cannot be opened
+     */
+
+    static OutputStream open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+}
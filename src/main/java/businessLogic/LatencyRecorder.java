@@ -0,0 +1,69 @@
+package businessLogic;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a fixed-size ring buffer and computes percentiles over them.
+ * Memory use is bounded by the number of samples, whatever the number of recorded operations.
+ */
+
+class LatencyRecorder {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+    private long max;
+
+    /**
+     * Constructs a LatencyRecorder.
+     *
+     * @param capacity the number of most recent samples kept
+     */
+
+    LatencyRecorder(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Records the latency of one operation.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * Computes a percentile of the recorded samples.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the latency at the percentile in milliseconds, or 0 if nothing was recorded
+     */
+
+    double percentileMillis(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    /**
+     * Gets the highest latency recorded.
+     *
+     * @return the maximum latency in milliseconds
+     */
+
+    synchronized double maxMillis() {
+        return max / 1e6;
+    }
+}
@@ -1,19 +1,32 @@
 package businessLogic;
 
+import connection.TransactionManager;
 import dataAccess.BillDAO;
 import dataAccess.ClientDAO;
+import dataAccess.ExportFormat;
 import dataAccess.OrderDAO;
+import dataAccess.OrderViewDAO;
 import dataAccess.ProductDAO;
 import dataModel.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.sql.Connection;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Business Logic Layer for managing orders.
@@ -26,93 +39,485 @@ public class OrderBLL {
     private final ClientDAO clientDAO;
     private final ProductDAO productDAO;
     private final BillDAO billDAO;
+    private final OrderViewDAO orderViewDAO;
 
     /**
-     * Constructs an OrderBLL instance with the given database connection.
-     * Initializes DAOs for interacting with the database.
-     *
-     * @param connection the connection to the database
+     * Constructs an OrderBLL instance.
+     * Initializes DAOs for interacting with the database, which join the transaction of the calling thread.
      */
 
-    public OrderBLL(Connection connection) {
-        this.orderDAO = new OrderDAO(connection);
-        this.clientDAO = new ClientDAO(connection);
-        this.productDAO = new ProductDAO(connection);
-        this.billDAO = new BillDAO(connection);
+    public OrderBLL() {
+        this.orderDAO = new OrderDAO();
+        this.clientDAO = new ClientDAO();
+        this.productDAO = new ProductDAO();
+        this.billDAO = new BillDAO();
+        this.orderViewDAO = new OrderViewDAO();
     }
 
     /**
-     * Places an order by validating the provided order data, checking stock availability,
-     * decrementing stock, and generating the associated bill.
+     * Places an order by validating the provided order data and running a single database statement that
+     * reserves the stock with a conditional decrement, inserts the order and inserts its bill.
+     * The statement is atomic on its own and joins the transaction of the calling thread if there is one.
+     * If the product row does not have enough stock, the stock is taken from the shards of the product.
      *
      * @param order the order to be placed
      * @return the saved order with the generated ID
      * @throws UnderStockException if there is not enough stock for the ordered product
+     * @throws IllegalArgumentException if the order data is invalid or the client or product does not exist
      * @throws RuntimeException if there is a database error or an unexpected issue
      */
 
     public Order placeOrder(Order order) throws UnderStockException {
+        return place(order).order();
+    }
+
+    /**
+     * Places an order like {@link #placeOrder} and returns the bill generated in the same round trip.
+     *
+     * @param order the order to be placed
+     * @return the bill of the saved order, with its generated ID
+     * @throws UnderStockException if there is not enough stock for the ordered product
+     * @throws IllegalArgumentException if the order data is invalid or the client or product does not exist
+     * @throws RuntimeException if there is a database error or an unexpected issue
+     */
+
+    public Bill placeOrderWithBill(Order order) throws UnderStockException {
+        return place(order).bill();
+    }
+
+    /**
+     * Validates and places an order, converting every outcome other than success to an exception.
+     *
+     * @param order the order to be placed
+     * @return the successful placement
+     * @throws UnderStockException if there is not enough stock for the ordered product
+     */
+
+    private OrderPlacement place(Order order) throws UnderStockException {
+        validateOrder(order);
+        OrderPlacement placement;
         try {
-            validateOrder(order);
-            if(!productDAO.checkStock(order.getProductId(), order.getQuantity())) {
-                throw new UnderStockException("Not enough stock for product ID: " + order.getProductId());
+            placement = orderDAO.place(order);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Order failed: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+        if(placement.status() == OrderPlacement.Status.UNDER_STOCK
+                && placement.availableStock() >= order.getQuantity()) {
+            placement = placeFromShards(order, placement);
+        }
+        return switch(placement.status()) {
+            case PLACED -> {
+                TransactionManager.afterCommit(() -> {
+                    EntityCaches.STOCK.invalidate(order.getProductId());
+                    StockIndex.shared().decrement(order.getProductId(), order.getQuantity());
+                });
+                yield placement;
             }
-            orderDAO.beginTransaction();
-            productDAO.decrementStock(order.getProductId(), order.getQuantity());
-            Order saveOrder = orderDAO.insert(order);
-            Bill bill = generateBill(saveOrder);
-            billDAO.insert(bill);
-            orderDAO.commit();
-            return saveOrder;
+            case UNDER_STOCK -> throw new UnderStockException(order.getProductId(), order.getQuantity(),
+                    placement.availableStock());
+            case UNKNOWN_CLIENT -> throw new IllegalArgumentException("Client not found: " + order.getClientId());
+            case UNKNOWN_PRODUCT -> throw new IllegalArgumentException("Product not found: " + order.getProductId());
+        };
+    }
+
+    /**
+     * Places an order that no single shard of the product could supply, although the product has enough stock
+     * in total, by draining the quantity from several shards.
+     * The shard decrement, the order and the bill are written in one transaction.
+     *
+     * @param order the order to be placed
+     * @param rejected the placement rejected by the single-statement placement
+     * @return the successful placement, or the rejection with the total stock of the product
+     */
+
+    private OrderPlacement placeFromShards(Order order, OrderPlacement rejected) {
+        try {
+            return TransactionManager.inTransaction(() -> {
+                if(!productDAO.tryDecrementShards(order.getProductId(), order.getQuantity())) {
+                    return new OrderPlacement(OrderPlacement.Status.UNDER_STOCK, null, null,
+                            productDAO.findTotalStock(order.getProductId()));
+                }
+                if(order.getOrderDate() == null) {
+                    order.setOrderDate(LocalDateTime.now());
+                }
+                Order saved = orderDAO.insert(order);
+                Client client = clientDAO.findById(order.getClientId());
+                Product product = productDAO.findById(order.getProductId());
+                Bill bill = billDAO.insert(new Bill(
+                        0,
+                        saved.getId(),
+                        client.getName(),
+                        product.getProductName(),
+                        saved.getQuantity(),
+                        BigDecimal.valueOf(product.getPrice()).multiply(BigDecimal.valueOf(saved.getQuantity())),
+                        saved.getOrderDate()
+                ));
+                return new OrderPlacement(OrderPlacement.Status.PLACED, saved, bill, rejected.availableStock());
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Order failed: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Places a multi-line order with a single database statement, whatever the number of lines.
+     * Lines for the same product are merged. The statement locks the products in ascending ID order,
+     * so concurrent orders sharing products never deadlock, and writes nothing unless every line can be placed.
+     * If a product row does not have enough stock, the order is placed again with the stock of the shards.
+     *
+     * @param clientId the ID of the client placing the order
+     * @param lines the lines of the order
+     * @return the multi-line bill of the saved order, with its generated ID
+     * @throws UnderStockException if there is not enough stock for one of the ordered products
+     * @throws IllegalArgumentException if the order data is invalid or the client or a product does not exist
+     * @throws RuntimeException if there is a database error or an unexpected issue
+     */
+
+    public Bill placeBasket(int clientId, List<OrderLine> lines) throws UnderStockException {
+        List<OrderLine> merged = mergeLines(clientId, lines);
+        BasketPlacement placement;
+        try {
+            placement = orderDAO.placeBasket(clientId, merged, null);
         } catch(SQLException e) {
             LOGGER.log(Level.SEVERE,"Order failed: " + e.getMessage());
-            orderDAO.rollback();
             throw new RuntimeException("Database error", e);
         }
+        if(placement.status() == OrderPlacement.Status.UNDER_STOCK) {
+            placement = placeBasketFromShards(clientId, merged, placement);
+        }
+        BasketPlacement outcome = placement;
+        return switch(outcome.status()) {
+            case PLACED -> {
+                TransactionManager.afterCommit(() -> {
+                    EntityCaches.STOCK.invalidateAll(merged.stream().map(OrderLine::productId).toList());
+                    merged.forEach(line -> StockIndex.shared().decrement(line.productId(), line.quantity()));
+                });
+                yield outcome.bill();
+            }
+            case UNDER_STOCK -> {
+                int requested = merged.stream().filter(line -> line.productId() == outcome.productId())
+                        .mapToInt(OrderLine::quantity).sum();
+                throw new UnderStockException(outcome.productId(), requested, outcome.availableStock());
+            }
+            case UNKNOWN_CLIENT -> throw new IllegalArgumentException("Client not found: " + clientId);
+            case UNKNOWN_PRODUCT -> throw new IllegalArgumentException("Product not found: " + outcome.productId());
+        };
     }
 
     /**
-     * Generates a bill for the given order by fetching client and product data from the database.
+     * Places a multi-line order that the product rows could not supply with the stock of the shards as well.
+     * In one transaction the products and their shards are locked, every line is checked against the stock
+     * of its row plus its shards, the stock each row lacks is moved into it from the shards, and the order is
+     * placed with the same statement as {@link #placeBasket}. Nothing is moved unless every line can be supplied.
      *
-     * @param order the order for which the bill is generated
-     * @return the generated bill
-     * @throws SQLException if there is an error fetching client or product data
+     * @param clientId the ID of the client placing the order
+     * @param lines the merged lines of the order
+     * @param rejected the placement rejected for lack of stock on a product row
+     * @return the placement outcome, with the total stock of the first product that prevented the order
      */
 
-    private Bill generateBill(Order order) throws SQLException{
-        Client client = clientDAO.findById(order.getClientId());
-        Product product = productDAO.findById(order.getProductId());
+    private BasketPlacement placeBasketFromShards(int clientId, List<OrderLine> lines, BasketPlacement rejected) {
+        try {
+            return TransactionManager.inTransaction(() -> {
+                List<Integer> ids = lines.stream().map(OrderLine::productId).toList();
+                Map<Integer, Product> products = productDAO.lockByIds(ids);
+                Map<Integer, Integer> shardStocks = productDAO.lockShardStocks(ids);
+                for(OrderLine line : lines) {
+                    Product product = products.get(line.productId());
+                    if(product == null) {
+                        return rejected;
+                    }
+                    int available = product.getCurrentStock() + shardStocks.getOrDefault(line.productId(), 0);
+                    if(available < line.quantity()) {
+                        return new BasketPlacement(OrderPlacement.Status.UNDER_STOCK, null, null, line.productId(),
+                                available);
+                    }
+                }
+                for(OrderLine line : lines) {
+                    int shortfall = line.quantity() - products.get(line.productId()).getCurrentStock();
+                    if(shortfall > 0 && !productDAO.refillFromShards(line.productId(), shortfall)) {
+                        throw new SQLException("Locked shards of product " + line.productId() + " ran out of stock");
+                    }
+                }
+                return orderDAO.placeBasket(clientId, lines, null);
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Order failed: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Places a batch of orders in one transaction, with a cost that grows with the number of distinct
+     * products rather than the number of orders. The products are locked in ascending ID order and their
+     * stock is allocated to the orders in the given order; each product then gets one aggregated stock
+     * decrement, and the accepted orders and their bills are inserted with JDBC batches.
+     * The stock of sharded products includes their shards, which are locked after the product rows;
+     * what the product row lacks is moved into it from the shards before the decrement.
+     * Orders that cannot be placed are reported in the results instead of failing the batch.
+     *
+     * @param orders the orders to be placed
+     * @return the outcome of every order, in the given order; placed orders carry their bill
+     * @throws IllegalArgumentException if an order is invalid, in which case no order is placed
+     * @throws RuntimeException if there is a database error, in which case no order is placed
+     */
 
-        return new Bill(
-                0,
-                order.getId(),
-                client.getName(),
-                product.getProductName(),
-                order.getQuantity(),
-                BigDecimal.valueOf(product.getPrice()).multiply(BigDecimal.valueOf(order.getQuantity())),
-                LocalDateTime.now()
-        );
+    public List<OrderPlacement> placeOrders(List<Order> orders) {
+        validateOrders(orders);
+        OrderPlacement[] results = new OrderPlacement[orders.size()];
+        if(orders.isEmpty()) {
+            return List.of();
+        }
+        try {
+            TransactionManager.inTransaction(() -> {
+                Map<Integer, Client> clients = clientDAO.findByIds(
+                        orders.stream().map(Order::getClientId).collect(Collectors.toSet()));
+                Map<Integer, Product> products = productDAO.lockByIds(
+                        orders.stream().map(Order::getProductId).collect(Collectors.toSet()));
+                Map<Integer, Integer> shardStocks = productDAO.lockShardStocks(products.keySet());
+                Map<Integer, Integer> remaining = new HashMap<>();
+                products.forEach((id, product) -> remaining.put(id,
+                        product.getCurrentStock() + shardStocks.getOrDefault(id, 0)));
+                Map<Integer, Integer> decrements = new TreeMap<>();
+                List<Integer> accepted = new ArrayList<>();
+                int[] available = new int[orders.size()];
+                for(int i = 0; i < orders.size(); i++) {
+                    Order order = orders.get(i);
+                    Integer left = remaining.get(order.getProductId());
+                    if(left == null) {
+                        results[i] = new OrderPlacement(OrderPlacement.Status.UNKNOWN_PRODUCT, null, null, -1);
+                    } else if(!clients.containsKey(order.getClientId())) {
+                        results[i] = new OrderPlacement(OrderPlacement.Status.UNKNOWN_CLIENT, null, null, left);
+                    } else if(left < order.getQuantity()) {
+                        results[i] = new OrderPlacement(OrderPlacement.Status.UNDER_STOCK, null, null, left);
+                    } else {
+                        remaining.put(order.getProductId(), left - order.getQuantity());
+                        decrements.merge(order.getProductId(), order.getQuantity(), Integer::sum);
+                        available[i] = left;
+                        accepted.add(i);
+                    }
+                }
+                if(accepted.isEmpty()) {
+                    return null;
+                }
+                for(Map.Entry<Integer, Integer> decrement : decrements.entrySet()) {
+                    int shortfall = decrement.getValue() - products.get(decrement.getKey()).getCurrentStock();
+                    if(shortfall > 0 && !productDAO.refillFromShards(decrement.getKey(), shortfall)) {
+                        throw new SQLException("Locked shards of product " + decrement.getKey() + " ran out of stock");
+                    }
+                }
+                productDAO.decrementStocks(decrements);
+                LocalDateTime now = LocalDateTime.now();
+                List<Order> placed = new ArrayList<>();
+                for(int i : accepted) {
+                    Order order = orders.get(i);
+                    if(order.getOrderDate() == null) {
+                        order.setOrderDate(now);
+                    }
+                    placed.add(order);
+                }
+                orderDAO.insertAll(placed);
+                List<Bill> bills = new ArrayList<>();
+                for(Order order : placed) {
+                    Product product = products.get(order.getProductId());
+                    bills.add(new Bill(
+                            0,
+                            order.getId(),
+                            clients.get(order.getClientId()).getName(),
+                            product.getProductName(),
+                            order.getQuantity(),
+                            BigDecimal.valueOf(product.getPrice()).multiply(BigDecimal.valueOf(order.getQuantity())),
+                            order.getOrderDate()
+                    ));
+                }
+                List<Bill> saved = billDAO.insertAll(bills);
+                for(int k = 0; k < accepted.size(); k++) {
+                    int i = accepted.get(k);
+                    results[i] = new OrderPlacement(OrderPlacement.Status.PLACED, orders.get(i), saved.get(k),
+                            available[i]);
+                }
+                return null;
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Order batch failed: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+        TransactionManager.afterCommit(() -> {
+            EntityCaches.STOCK.invalidateAll(orders.stream().map(Order::getProductId).collect(Collectors.toSet()));
+            for(int i = 0; i < results.length; i++) {
+                if(results[i].status() == OrderPlacement.Status.PLACED) {
+                    StockIndex.shared().decrement(orders.get(i).getProductId(), orders.get(i).getQuantity());
+                }
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Retrieves the orders with the given IDs with a single query,
+     * with client and product names instead of just their IDs.
+     *
+     * @param ids the IDs of the orders
+     * @return the {@link OrderView} objects keyed by order ID; orders that do not exist are left out
+     */
+
+    public Map<Integer, OrderView> getOrdersByIds(Collection<Integer> ids) {
+        try {
+            return orderViewDAO.findByIds(ids);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to fetch orders: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
     }
 
     /**
      * Retrieves a list of all the orders from the database and includes client and product names
-     * instead of just their IDs.
+     * instead of just their IDs. The views are read with a single join query.
      *
      * @return a list of {@link OrderView} objects representing the orders
      */
 
     public List<OrderView> getAllOrders() {
-        return orderDAO.findAll().stream().map(order -> {
-            Client client = clientDAO.findById(order.getClientId());
-            Product product = productDAO.findById(order.getProductId());
-            return new OrderView(
-                    order.getId(),
-                    client.getName(),
-                    product.getProductName(),
-                    order.getQuantity(),
-                    order.getOrderDate()
-            );
-        }).collect(Collectors.toList());
+        try {
+            return orderViewDAO.findAll();
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to fetch orders: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Retrieves the orders matching the given filters, with client and product names instead of just their IDs.
+     *
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param clientId the ID of the client who placed the orders, or null for all clients
+     * @return a list of {@link OrderView} objects representing the matching orders
+     */
+
+    public List<OrderView> getOrders(LocalDateTime from, LocalDateTime to, Integer clientId) {
+        try {
+            return orderViewDAO.find(from, to, clientId);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to fetch orders: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Streams the orders matching the given filters from a server-side cursor,
+     * with client and product names instead of just their IDs.
+     *
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param clientId the ID of the client who placed the orders, or null for all clients
+     * @return a lazy stream of {@link OrderView} objects, which must be closed if not fully consumed
+     */
+
+    public Stream<OrderView> streamOrders(LocalDateTime from, LocalDateTime to, Integer clientId) {
+        try {
+            return orderViewDAO.stream(from, to, clientId);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to stream orders: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Retrieves a page of orders sorted by ID, starting after the given ID,
+     * with client and product names instead of just their IDs.
+     *
+     * @param afterId the ID of the last order of the previous page, or 0 for the first page
+     * @param limit the maximum number of orders in the page
+     * @return a list of {@link OrderView} objects representing the orders of the page
+     */
+
+    public List<OrderView> getOrdersPage(int afterId, int limit) {
+        try {
+            return orderViewDAO.findPage(afterId, limit);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to fetch orders: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Exports the orders matching the given filters to a file, streamed by the database with {@code COPY},
+     * with client and product names instead of just their IDs.
+     * No order objects are created, so memory use does not grow with the number of orders.
+     *
+     * @param file the file to write, replaced if it exists
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param clientId the ID of the client who placed the orders, or null for all clients
+     * @param format the format of the file
+     * @return the number of orders exported
+     * @throws IOException if the file cannot be written
+     */
+
+    public long exportOrders(Path file, LocalDateTime from, LocalDateTime to, Integer clientId, ExportFormat format)
+            throws IOException {
+        try(OutputStream out = Exports.open(file)) {
+            return orderViewDAO.exportTo(out, from, to, clientId, format);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to export orders: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Validates every order of a batch, reporting the position of the first invalid one.
+     *
+     * @param orders the orders to be validated
+     * @throws IllegalArgumentException if any order is invalid
+     */
+
+    private void validateOrders(List<Order> orders) throws IllegalArgumentException {
+        int row = 0;
+        for(Order order : orders) {
+            try {
+                validateOrder(order);
+            } catch(IllegalArgumentException e) {
+                throw new IllegalArgumentException("Row " + row + ": " + e.getMessage(), e);
+            }
+            row++;
+        }
+    }
+
+    /**
+     * Validates the lines of a multi-line order and merges the lines for the same product,
+     * keeping the position of the first one.
+     *
+     * @param clientId the ID of the client placing the order
+     * @param lines the lines to be validated
+     * @return the lines for distinct products
+     * @throws IllegalArgumentException if any order data is invalid
+     */
+
+    private List<OrderLine> mergeLines(int clientId, List<OrderLine> lines) throws IllegalArgumentException {
+        if(clientId <= 0) {
+            throw new IllegalArgumentException("Invalid client ID");
+        }
+        if(lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("Order must have at least one line");
+        }
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        int row = 0;
+        for(OrderLine line : lines) {
+            if(line.productId() <= 0) {
+                throw new IllegalArgumentException("Line " + row + ": Invalid product ID");
+            }
+            if(line.quantity() <= 0) {
+                throw new IllegalArgumentException("Line " + row + ": Quantity must be positive");
+            }
+            quantities.merge(line.productId(), line.quantity(), Math::addExact);
+            row++;
+        }
+        List<OrderLine> merged = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> merged.add(new OrderLine(productId, quantity)));
+        return merged;
     }
 
     /**
@@ -0,0 +1,190 @@
+package businessLogic;
+
+import connection.ConnectionFactory;
+import dataModel.EngineStats;
+import dataModel.Order;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Places orders submitted from any number of producer threads on a fixed pool of worker threads.
+ * Every order runs through {@link OrderBLL#placeOrder} in its own transaction, where the stock is reserved
+ * with a conditional decrement, so {@code current_stock} never goes below zero under contention.
+ * Producers are slowed down when {@code engine.queueCapacity} orders are already waiting.
+ * The engine records the throughput and the latency from submission to completion of every order.
+ */
+
+public class OrderEngine implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(OrderEngine.class.getName());
+
+    private final OrderBLL orderBLL;
+    private final ExecutorService workers;
+    private final int parallelism;
+    private final LatencyRecorder latencies;
+    private final AtomicLong placed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong firstSubmit = new AtomicLong();
+    private final AtomicLong lastCompletion = new AtomicLong();
+
+    /**
+     * Constructs an OrderEngine with {@code engine.parallelism} workers.
+     *
+     * @param orderBLL the business logic placing the orders
+     */
+
+    public OrderEngine(OrderBLL orderBLL) {
+        this(orderBLL, ConnectionFactory.getIntProperty("engine.parallelism",
+                ConnectionFactory.getPool().getMaxSize()));
+    }
+
+    /**
+     * Constructs an OrderEngine with the given number of workers.
+     * Every worker holds a pooled connection while it places an order, so more workers than
+     * {@code db.pool.maxSize} only wait for connections.
+     *
+     * @param orderBLL the business logic placing the orders
+     * @param parallelism the number of worker threads
+     * @throws IllegalArgumentException if the parallelism is not positive
+     */
+
+    public OrderEngine(OrderBLL orderBLL, int parallelism) {
+        if(parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.orderBLL = orderBLL;
+        this.parallelism = parallelism;
+        this.latencies = new LatencyRecorder(ConnectionFactory.getIntProperty("engine.latencySamples", 10000));
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(ConnectionFactory.getIntProperty("engine.queueCapacity", 10000)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "order-engine-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    if(pool.isShutdown()) {
+                        throw new RejectedExecutionException("The order engine is closed");
+                    }
+                    try {
+                        pool.getQueue().put(task);
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting to submit an order", e);
+                    }
+                    if(pool.isShutdown() && pool.remove(task)) {
+                        throw new RejectedExecutionException("The order engine is closed");
+                    }
+                });
+        this.workers = executor;
+    }
+
+    /**
+     * Submits an order to be placed by a worker, blocking while the queue is full.
+     * The returned future fails with {@link UnderStockException} if there is not enough stock,
+     * with {@link IllegalArgumentException} if the order is invalid, and with {@link RuntimeException}
+     * on a database error.
+     *
+     * @param order the order to be placed
+     * @return a future completed with the saved order
+     * @throws RejectedExecutionException if the engine is closed
+     */
+
+    public CompletableFuture<Order> submit(Order order) {
+        long submitted = System.nanoTime();
+        firstSubmit.compareAndSet(0, submitted);
+        CompletableFuture<Order> result = new CompletableFuture<>();
+        workers.execute(() -> {
+            try {
+                Order saved = orderBLL.placeOrder(order);
+                placed.incrementAndGet();
+                complete(submitted);
+                result.complete(saved);
+            } catch(UnderStockException e) {
+                rejected.incrementAndGet();
+                complete(submitted);
+                result.completeExceptionally(e);
+            } catch(RuntimeException e) {
+                failed.incrementAndGet();
+                complete(submitted);
+                LOGGER.log(Level.WARNING, "Order failed in the engine: " + e.getMessage());
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Records the latency of a finished order.
+     *
+     * @param submitted the time the order was submitted, from {@link System#nanoTime()}
+     */
+
+    private void complete(long submitted) {
+        long now = System.nanoTime();
+        latencies.record(now - submitted);
+        lastCompletion.accumulateAndGet(now, Math::max);
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the parallelism of the engine
+     */
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the throughput and latency of the orders processed so far.
+     * The throughput is measured from the first submission to the last completion,
+     * and the latency percentiles are computed over the most recent {@code engine.latencySamples} orders.
+     *
+     * @return a snapshot of the engine statistics
+     */
+
+    public EngineStats getStats() {
+        long elapsed = lastCompletion.get() - firstSubmit.get();
+        double ordersPerSecond = elapsed <= 0 ? 0 : placed.get() * 1e9 / elapsed;
+        return new EngineStats(
+                placed.get(),
+                rejected.get(),
+                failed.get(),
+                ordersPerSecond,
+                latencies.percentileMillis(50),
+                latencies.percentileMillis(99),
+                latencies.maxMillis()
+        );
+    }
+
+    /**
+     * Stops accepting orders and waits for the submitted orders to be placed.
+     */
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            if(!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.WARNING, "Order engine did not finish within a minute");
+                workers.shutdownNow();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+        LOGGER.log(Level.INFO, getStats().toString().trim());
+    }
+}
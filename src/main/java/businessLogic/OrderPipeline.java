@@ -0,0 +1,348 @@
+package businessLogic;
+
+import connection.ConnectionFactory;
+import connection.TransactionManager;
+import dataModel.Bill;
+import dataModel.Order;
+import dataModel.PipelineStats;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Places orders submitted from any number of threads with group commit: a single writer thread drains
+ * a bounded queue and places up to {@code pipeline.batchSize} orders in one transaction, waiting at most
+ * {@code pipeline.lingerMs} milliseconds for a batch to fill, so the cost of a commit is shared by the batch.
+ * Every order is placed with {@link OrderBLL#placeOrderWithBill}, and its future is completed only after
+ * the transaction has committed. An order rejected for lack of stock or invalid data does not affect the others;
+ * if the transaction fails, its orders are placed again one by one so that every future gets its own outcome.
+ * Producers are blocked while {@code pipeline.queueCapacity} orders are waiting.
+ * Futures are completed on the writer thread, so slow dependent actions should use the async variants.
+ */
+
+public class OrderPipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(OrderPipeline.class.getName());
+
+    private final OrderBLL orderBLL;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final int queueCapacity;
+    private final Thread writer;
+    private final LatencyRecorder batchLatencies;
+    private final AtomicLong placed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedOrders = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    /**
+     * An order waiting to be written, with the future of its bill.
+     *
+     * @param order the order to be placed
+     * @param result the future completed with the bill of the order
+     */
+
+    private record Pending(Order order, CompletableFuture<Bill> result) {
+    }
+
+    /**
+     * Constructs an OrderPipeline configured with the {@code pipeline.*} properties and starts its writer.
+     *
+     * @param orderBLL the business logic placing the orders
+     */
+
+    public OrderPipeline(OrderBLL orderBLL) {
+        this(orderBLL,
+                ConnectionFactory.getIntProperty("pipeline.batchSize", 100),
+                ConnectionFactory.getIntProperty("pipeline.lingerMs", 5),
+                ConnectionFactory.getIntProperty("pipeline.queueCapacity", 10000));
+    }
+
+    /**
+     * Constructs an OrderPipeline and starts its writer.
+     *
+     * @param orderBLL the business logic placing the orders
+     * @param batchSize the maximum number of orders per transaction
+     * @param lingerMillis the maximum time to wait for more orders before committing a batch, in milliseconds
+     * @param queueCapacity the maximum number of orders waiting to be written
+     * @throws IllegalArgumentException if the batch size or queue capacity is not positive or the linger is negative
+     */
+
+    public OrderPipeline(OrderBLL orderBLL, int batchSize, long lingerMillis, int queueCapacity) {
+        if(batchSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Batch size and queue capacity must be positive");
+        }
+        if(lingerMillis < 0) {
+            throw new IllegalArgumentException("Linger time cannot be negative");
+        }
+        this.orderBLL = orderBLL;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchLatencies = new LatencyRecorder(ConnectionFactory.getIntProperty("engine.latencySamples", 10000));
+        this.writer = new Thread(this::drain, "order-pipeline-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Submits an order to be placed in the next batch, blocking while the queue is full.
+     * The returned future fails with {@link UnderStockException} if there is not enough stock,
+     * with {@link IllegalArgumentException} if the order is invalid, and with {@link RuntimeException}
+     * on a database error.
+     *
+     * @param order the order to be placed
+     * @return a future completed with the bill of the saved order once its transaction has committed
+     * @throws RejectedExecutionException if the pipeline is closed or the thread is interrupted while waiting
+     */
+
+    public CompletableFuture<Bill> submit(Order order) {
+        if(closed) {
+            throw new RejectedExecutionException("The order pipeline is closed");
+        }
+        CompletableFuture<Bill> result = new CompletableFuture<>();
+        try {
+            queue.put(new Pending(order, result));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to submit an order", e);
+        }
+        if(stopped) {
+            failRemaining(new ArrayList<>());
+        }
+        return result;
+    }
+
+    /**
+     * Takes batches from the queue and writes them until the pipeline is closed and the queue is empty.
+     */
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            while(!closed || !queue.isEmpty()) {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while(batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if(batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if(next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+                batch.clear();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Order pipeline writer stopped", e);
+        }
+        closed = true;
+        stopped = true;
+        failRemaining(batch);
+    }
+
+    /**
+     * Places a batch of orders in one transaction and completes their futures after the commit.
+     * The orders are placed in ascending product ID order, keeping the submission order among orders for
+     * the same product, so the product rows the transaction locks until its commit are taken in the same order
+     * as every other batch placement and a concurrent batch cannot deadlock with it.
+     * If the transaction fails, the orders are placed again one by one.
+     *
+     * @param batch the orders to be placed
+     */
+
+    private void write(List<Pending> batch) {
+        long start = System.nanoTime();
+        Bill[] bills = new Bill[batch.size()];
+        Exception[] errors = new Exception[batch.size()];
+        Integer[] byProduct = new Integer[batch.size()];
+        Arrays.setAll(byProduct, i -> i);
+        Arrays.sort(byProduct, Comparator.comparingInt(i -> batch.get(i).order().getProductId()));
+        try {
+            TransactionManager.inTransaction(() -> {
+                for(int i : byProduct) {
+                    try {
+                        bills[i] = orderBLL.placeOrderWithBill(batch.get(i).order());
+                    } catch(UnderStockException | IllegalArgumentException e) {
+                        errors[i] = e;
+                    }
+                }
+                return null;
+            });
+        } catch(SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Order batch of " + batch.size() + " failed, placing its orders one by one: "
+                    + e.getMessage());
+            fallbacks.incrementAndGet();
+            writeEach(batch);
+            return;
+        } finally {
+            batchLatencies.record(System.nanoTime() - start);
+            batches.incrementAndGet();
+            batchedOrders.addAndGet(batch.size());
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+        }
+        for(int i = 0; i < batch.size(); i++) {
+            if(errors[i] == null) {
+                placed.incrementAndGet();
+                batch.get(i).result().complete(bills[i]);
+            } else {
+                rejected.incrementAndGet();
+                batch.get(i).result().completeExceptionally(errors[i]);
+            }
+        }
+    }
+
+    /**
+     * Places the orders of a failed batch one by one, each in its own transaction.
+     *
+     * @param batch the orders to be placed
+     */
+
+    private void writeEach(List<Pending> batch) {
+        for(Pending pending : batch) {
+            pending.order().setId(0);
+            try {
+                Bill bill = orderBLL.placeOrderWithBill(pending.order());
+                placed.incrementAndGet();
+                pending.result().complete(bill);
+            } catch(UnderStockException | IllegalArgumentException e) {
+                rejected.incrementAndGet();
+                pending.result().completeExceptionally(e);
+            } catch(RuntimeException e) {
+                failed.incrementAndGet();
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Fails the futures of the orders that the writer will not place.
+     * Called by the writer when it stops, and by producers whose order was queued after that.
+     *
+     * @param batch the orders of the batch being written when the writer stopped
+     */
+
+    private void failRemaining(List<Pending> batch) {
+        queue.drainTo(batch);
+        for(Pending pending : batch) {
+            if(!pending.result().isDone()) {
+                failed.incrementAndGet();
+                pending.result().completeExceptionally(new RejectedExecutionException("The order pipeline is closed"));
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Gets the maximum number of orders per transaction.
+     *
+     * @return the batch size
+     */
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets the maximum time the writer waits for more orders before committing a batch.
+     *
+     * @return the linger time in milliseconds
+     */
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * Gets the maximum number of orders waiting to be written.
+     *
+     * @return the queue capacity
+     */
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the number of orders waiting to be written.
+     *
+     * @return the queue depth
+     */
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the activity of the pipeline so far.
+     * The transaction durations are computed over the most recent {@code engine.latencySamples} batches.
+     *
+     * @return a snapshot of the pipeline statistics
+     */
+
+    public PipelineStats getStats() {
+        long count = batches.get();
+        return new PipelineStats(
+                placed.get(),
+                rejected.get(),
+                failed.get(),
+                count,
+                count == 0 ? 0 : (double) batchedOrders.get() / count,
+                largestBatch.get(),
+                fallbacks.get(),
+                queue.size(),
+                batchLatencies.percentileMillis(50),
+                batchLatencies.percentileMillis(99)
+        );
+    }
+
+    /**
+     * Stops accepting orders and waits for the submitted orders to be written.
+     */
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.MINUTES.toMillis(1));
+            if(writer.isAlive()) {
+                LOGGER.log(Level.WARNING, "Order pipeline did not finish within a minute");
+                writer.interrupt();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+        LOGGER.log(Level.INFO, getStats().toString().trim());
+    }
+}
@@ -1,34 +1,51 @@
 package businessLogic;
 
+import connection.TransactionManager;
 import dataAccess.ProductDAO;
+import dataAccess.StaleEntityException;
+import dataModel.CacheStats;
+import dataModel.ImportReport;
 import dataModel.Product;
 
-import java.sql.Connection;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Business Logic Layer for managing product operations.
  * This class handles adding, updating, deleting, and fetching products,
- * as well as checking and decrementing product stock.
+ * as well as checking and decrementing product stock, and sharding the stock of hot products.
+ * Lookups by ID are served from a cache shared by every instance; the name and price of a product are cached
+ * for {@code cache.ttlMs} and its stock only for {@code cache.stockTtlMs}, and every write made through this
+ * class invalidates the products it changes.
  */
 
 public class ProductBLL {
 
     private static final Logger LOGGER = Logger.getLogger(ProductBLL.class.getName());
     private final ProductDAO productDAO;
+    private final StockIndex stockIndex;
 
     /**
-     * Constructs a ProductBLL instance with the provided database connection.
-     * Initializes the DAO for interacting with the product table in the database.
-     *
-     * @param connection the connection to the database
+     * Constructs a ProductBLL instance.
+     * Initializes the DAO for the product table, which borrows a pooled connection for every operation.
+     * The shared caches are subscribed to the change notifications of other instances,
+     * and the shared stock index is loaded the first time a ProductBLL is constructed.
      */
 
-    public ProductBLL(Connection connection) {
-        this.productDAO = new ProductDAO(connection);
+    public ProductBLL() {
+        this.productDAO = new ProductDAO();
+        EntityCaches.listen();
+        this.stockIndex = StockIndex.shared();
     }
 
     /**
@@ -42,7 +59,10 @@ public class ProductBLL {
     public Product addProduct(Product product) throws IllegalArgumentException {
         try {
             validateProduct(product);
-            return productDAO.insert(product);
+            Product saved = productDAO.insert(product);
+            evict(saved.getId());
+            stockIndex.changed(saved.getId());
+            return saved;
         } catch(SQLException e) {
             LOGGER.log(Level.SEVERE,"Failed to add product: " + e.getMessage());
             throw new RuntimeException("Database error", e);
@@ -56,15 +76,137 @@ public class ProductBLL {
      * @param id the ID of the product to be updated
      * @return the updated product
      * @throws IllegalArgumentException if the product data is invalid
+     * @throws IllegalStateException if the product was changed by someone else since it was read
      */
 
     public Product updateProduct(Product product, int id) throws IllegalArgumentException {
         try {
             validateProduct(product);
             return productDAO.update(product, id);
+        } catch(StaleEntityException e) {
+            throw conflict(e);
         } catch(SQLException e) {
             LOGGER.log(Level.SEVERE,"Failed to update product: " + e.getMessage());
             throw new RuntimeException("Database error", e);
+        } finally {
+            evict(id);
+            stockIndex.changed(id);
+        }
+    }
+
+    /**
+     * Updates an existing product after validating its data, writing only the fields that differ from
+     * the product as it was read, so a price change does not overwrite the stock decremented by orders meanwhile.
+     *
+     * @param product the product with updated information
+     * @param original the product as it was read from the database
+     * @return the updated product
+     * @throws IllegalArgumentException if the product data is invalid
+     * @throws IllegalStateException if the product was changed by someone else since it was read
+     */
+
+    public Product updateProduct(Product product, Product original) throws IllegalArgumentException {
+        try {
+            validateProduct(product);
+            return productDAO.update(product, original, original.getId());
+        } catch(StaleEntityException e) {
+            throw conflict(e);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to update product: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            evict(original.getId());
+            stockIndex.changed(original.getId());
+        }
+    }
+
+    /**
+     * Adds all the given products to the database in JDBC batches.
+     * Every product is validated before anything is written, and the products are inserted in a single transaction.
+     *
+     * @param products the products to be added
+     * @return the added products with their generated IDs
+     * @throws IllegalArgumentException if the data of any product is invalid
+     * @throws RuntimeException if there is a database error
+     */
+
+    public List<Product> addProducts(List<Product> products) throws IllegalArgumentException {
+        try {
+            validateProducts(products);
+            List<Product> saved = productDAO.insertAll(products);
+            evict(saved.stream().map(Product::getId).toList());
+            saved.forEach(product -> stockIndex.changed(product.getId()));
+            return saved;
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to add products: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Updates all the given products in the database in JDBC batches.
+     * Every product is validated before anything is written, and the products are updated in a single transaction.
+     *
+     * @param products the updated product data, keyed by the ID of the product to be updated
+     * @return the updated products
+     * @throws IllegalArgumentException if the data of any product is invalid
+     * @throws IllegalStateException if a product was changed by someone else since it was read
+     * @throws RuntimeException if there is a database error
+     */
+
+    public Map<Integer, Product> updateProducts(Map<Integer, Product> products) throws IllegalArgumentException {
+        try {
+            validateProducts(products.values());
+            return productDAO.updateAll(products);
+        } catch(StaleEntityException e) {
+            throw conflict(e);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to update products: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            evict(products.keySet());
+            products.keySet().forEach(stockIndex::changed);
+        }
+    }
+
+    /**
+     * Imports products from a CSV file with the columns product_name,price,current_stock, after a header line.
+     * The file is streamed into the database with {@code COPY}, so memory use does not depend on its size.
+     * Every row is validated with the same rules as {@link #addProduct(Product)}; invalid rows are reported
+     * as rejects and the valid rows are still imported.
+     * Products whose name already exists update the price and stock of the existing product.
+     *
+     * @param csvFile the path of the CSV file
+     * @return the import report with the throughput and the rejected rows
+     * @throws IOException if the file cannot be read
+     * @throws RuntimeException if there is a database error, in which case nothing is imported
+     */
+
+    public ImportReport importProducts(Path csvFile) throws IOException {
+        long start = System.nanoTime();
+        try(BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            CsvRecords<Product> records = new CsvRecords<>(reader, fields -> {
+                CsvRecords.requireFields(fields, 3);
+                Product product = new Product(fields.get(0),
+                        CsvRecords.parseDouble(fields.get(1), "Price"),
+                        CsvRecords.parseInt(fields.get(2), "Stock"));
+                validateProduct(product);
+                return product;
+            });
+            int imported = productDAO.bulkImport(records);
+            ImportReport report = new ImportReport(records.getRowsRead(), imported, records.getRejects(),
+                    (System.nanoTime() - start) / 1_000_000);
+            LOGGER.log(Level.INFO, "Imported products from " + csvFile + ": " + report);
+            return report;
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to import products: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.PRODUCTS.invalidateAll();
+            EntityCaches.STOCK.invalidateAll();
+            stockIndex.changedAll();
         }
     }
 
@@ -76,31 +218,89 @@ public class ProductBLL {
 
     public void deleteProduct(int id) {
         productDAO.delete(id);
+        evict(id);
+        stockIndex.changed(id);
     }
 
     /**
-     * Retrieves all products from the database.
+     * Retrieves all products, from the cache if none of them changed since they were last read.
+     * The stock of the products is read again with a single query once it has expired.
      *
      * @return a list of all products
      */
 
     public List<Product> getAllProducts() {
-        return productDAO.findAll();
+        List<Product> products = EntityCaches.PRODUCTS.getAll(productDAO::findAll, Product::getId);
+        Map<Integer, Integer> stocks = EntityCaches.STOCK.getAll(products.stream().map(Product::getId).toList(),
+                this::readStocks);
+        products.removeIf(product -> !applyStock(product, stocks));
+        return products;
     }
 
     /**
-     * Retrieves a product by its ID from the database.
+     * Retrieves a page of products sorted by ID, starting after the given ID.
+     * The stock of the products includes the stock of their shards.
+     *
+     * @param afterId the ID of the last product of the previous page, or 0 for the first page
+     * @param limit the maximum number of products in the page
+     * @return the products of the page
+     */
+
+    public List<Product> getProductsPage(int afterId, int limit) {
+        List<Product> products = productDAO.findPage(afterId, limit);
+        Map<Integer, Integer> stocks = EntityCaches.STOCK.getAll(products.stream().map(Product::getId).toList(),
+                this::readStocks);
+        products.removeIf(product -> !applyStock(product, stocks));
+        return products;
+    }
+
+    /**
+     * Retrieves a product by its ID, from the cache if it was read recently.
      *
      * @param id the ID of the product to be retrieved
-     * @return the product with the specified ID
+     * @return the product with the specified ID, or null if it does not exist
      */
 
     public Product findById(int id) {
-        return productDAO.findById(id);
+        Product product = EntityCaches.PRODUCTS.get(id, productDAO::findById);
+        if(product == null) {
+            return null;
+        }
+        Integer stock = EntityCaches.STOCK.get(id, key -> readStocks(List.of(key)).get(key));
+        return applyStock(product, stock == null ? Map.of() : Map.of(id, stock)) ? product : null;
     }
 
     /**
-     * Checks if there is enough stock for a specific product.
+     * Retrieves the products with the given IDs, reading the ones that are not cached
+     * with a single query per chunk of IDs.
+     *
+     * @param ids the IDs of the products
+     * @return the products keyed by ID
+     */
+
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        Map<Integer, Product> products = EntityCaches.PRODUCTS.getAll(ids, productDAO::findByIds);
+        Map<Integer, Integer> stocks = EntityCaches.STOCK.getAll(products.keySet(), this::readStocks);
+        products.values().removeIf(product -> !applyStock(product, stocks));
+        return products;
+    }
+
+    /**
+     * Gets the hits, misses and evictions of the product cache and of the stock cache.
+     *
+     * @return the statistics of the product and stock caches
+     */
+
+    public List<CacheStats> getCacheStats() {
+        return List.of(EntityCaches.PRODUCTS.stats(), EntityCaches.STOCK.stats());
+    }
+
+    /**
+     * Checks if there is enough stock for a specific product, counting the stock of its shards.
+     * The check is answered from the in-memory stock index, without a database round trip; see
+     * {@link StockIndex} for how stale it can be. Placing an order still checks the stock in the database,
+     * so a stale answer can only show a product as available when it was just sold out, or the reverse.
+     * Products missing from the index are checked against the database and indexed for the next check.
      *
      * @param productId the ID of the product to check
      * @param quantity the quantity to check for availability
@@ -108,6 +308,11 @@ public class ProductBLL {
      */
 
     public boolean isStockSufficient(int productId, int quantity) {
+        int stock = stockIndex.stock(productId);
+        if(stock != StockIndex.UNKNOWN) {
+            return stock >= quantity;
+        }
+        stockIndex.changed(productId);
         try {
             return productDAO.checkStock(productId, quantity);
         } catch(SQLException e) {
@@ -118,6 +323,8 @@ public class ProductBLL {
 
     /**
      * Decrements the stock of a specific product by a specified quantity.
+     * Inside a transaction, the cached stock and the stock index are updated only once it commits,
+     * so a rollback cannot leave them below the stock in the database.
      *
      * @param productId the ID of the product to decrement stock for
      * @param quantity the quantity to decrement from the stock
@@ -130,6 +337,157 @@ public class ProductBLL {
             LOGGER.log(Level.SEVERE,"Failed to decrement stock: " + e.getMessage());
             throw new RuntimeException("Database error", e);
         }
+        TransactionManager.afterCommit(() -> {
+            EntityCaches.STOCK.invalidate(productId);
+            stockIndex.decrement(productId, quantity);
+        });
+    }
+
+    /**
+     * Gets the stock of a product, aggregated over the product row and all of its shards.
+     *
+     * @param productId the ID of the product
+     * @return the total stock of the product
+     * @throws IllegalArgumentException if the product does not exist
+     */
+
+    public int getTotalStock(int productId) {
+        int stock;
+        try {
+            stock = productDAO.findTotalStock(productId);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to read stock: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+        if(stock < 0) {
+            throw new IllegalArgumentException("Product not found: " + productId);
+        }
+        return stock;
+    }
+
+    /**
+     * Switches a hot product to sharded stock, splitting its stock across the given number of shards
+     * so that concurrent orders decrement different rows instead of queuing on the product row lock.
+     *
+     * @param productId the ID of the product
+     * @param shards the number of shards
+     * @throws IllegalArgumentException if the number of shards is not positive
+     */
+
+    public void shardStock(int productId, int shards) {
+        if(shards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be positive");
+        }
+        try {
+            productDAO.shardStock(productId, shards);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to shard stock: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.STOCK.invalidate(productId);
+        }
+    }
+
+    /**
+     * Switches a product back to a single stock row, moving the stock of its shards into it.
+     *
+     * @param productId the ID of the product
+     */
+
+    public void unshardStock(int productId) {
+        try {
+            productDAO.unshardStock(productId);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to unshard stock: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            EntityCaches.STOCK.invalidate(productId);
+        }
+    }
+
+    /**
+     * Retrieves the number of shards of every product with sharded stock.
+     *
+     * @return the number of shards keyed by product ID
+     */
+
+    public Map<Integer, Integer> getShardCounts() {
+        try {
+            return productDAO.findShardCounts();
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to read stock shards: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Reads the total stock of the given products, the stock of their rows plus the stock of their shards.
+     * The stock read with the other columns of a product is only the stock of its row, so it is never cached.
+     *
+     * @param ids the IDs of the products
+     * @return the total stock keyed by product ID
+     */
+
+    private Map<Integer, Integer> readStocks(Collection<Integer> ids) {
+        try {
+            return productDAO.findStocks(ids);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to read stock: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Sets the current stock of a cached product, dropping the product from the cache if it no longer exists.
+     *
+     * @param product the product from the cache
+     * @param stocks the current stock keyed by product ID
+     * @return {@code true} if the stock was set, {@code false} if the product no longer exists
+     */
+
+    private boolean applyStock(Product product, Map<Integer, Integer> stocks) {
+        Integer stock = stocks.get(product.getId());
+        if(stock == null) {
+            EntityCaches.PRODUCTS.invalidate(product.getId());
+            return false;
+        }
+        product.setCurrentStock(stock);
+        return true;
+    }
+
+    /**
+     * Drops a product and its stock from the caches after it was written.
+     *
+     * @param id the ID of the product
+     */
+
+    private void evict(int id) {
+        EntityCaches.PRODUCTS.invalidate(id);
+        EntityCaches.STOCK.invalidate(id);
+    }
+
+    /**
+     * Drops products and their stock from the caches after they were written.
+     *
+     * @param ids the IDs of the products
+     */
+
+    private void evict(Collection<Integer> ids) {
+        EntityCaches.PRODUCTS.invalidateAll(ids);
+        EntityCaches.STOCK.invalidateAll(ids);
+    }
+
+    /**
+     * Converts an optimistic lock failure into the exception reported to the caller, who can reload and retry.
+     *
+     * @param e the optimistic lock failure
+     * @return the exception to throw
+     */
+
+    private IllegalStateException conflict(StaleEntityException e) {
+        LOGGER.log(Level.WARNING,"Product update conflict: " + e.getMessage());
+        return new IllegalStateException("Product " + e.getId() + " was changed by someone else, reload it and retry",
+                e);
     }
 
     /**
@@ -150,4 +508,23 @@ public class ProductBLL {
             throw new IllegalArgumentException("Stock cannot be negative");
         }
     }
+
+    /**
+     * Validates every product of a bulk operation, reporting the position of the first invalid one.
+     *
+     * @param products the products to be validated
+     * @throws IllegalArgumentException if any product is invalid
+     */
+
+    private void validateProducts(Collection<Product> products) throws IllegalArgumentException {
+        int row = 0;
+        for(Product product : products) {
+            try {
+                validateProduct(product);
+            } catch(IllegalArgumentException e) {
+                throw new IllegalArgumentException("Row " + row + ": " + e.getMessage(), e);
+            }
+            row++;
+        }
+    }
 }
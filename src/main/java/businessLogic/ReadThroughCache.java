@@ -0,0 +1,270 @@
+package businessLogic;
+
+import dataModel.CacheStats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caches entities in front of a DAO, loading the missing ones on a lookup.
+ * Entries are evicted in least recently used order once the cache holds {@code maxEntries} entries,
+ * and expire {@code ttlMillis} after they were loaded, which bounds how stale a change made by another
+ * process can be. Changes made through this process invalidate the affected entries instead.
+ * Cached entities are mutable, so the cache stores and hands out copies.
+ * A load that started before an invalidation is returned to its caller but not stored,
+ * so a slow reader cannot put back a value that a concurrent write has just invalidated.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached entities
+ */
+
+class ReadThroughCache<K, V> {
+
+    /**
+     * A cached value and the time it was loaded.
+     */
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final UnaryOperator<V> copier;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private List<K> allKeys;
+    private long allLoadedAt;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructs a ReadThroughCache.
+     *
+     * @param name the name reported in the statistics
+     * @param maxEntries the maximum number of cached entries
+     * @param ttlMillis the milliseconds an entry is served after it was loaded
+     * @param copier copies an entity, or returns it if it is immutable
+     */
+
+    ReadThroughCache(String name, int maxEntries, long ttlMillis, UnaryOperator<V> copier) {
+        this.name = name;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.copier = copier;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if(size() > ReadThroughCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the entity with the given key, loading it if it is not cached or has expired.
+     *
+     * @param key the key of the entity
+     * @param loader loads the entity, returning null if it does not exist
+     * @return a copy of the entity, or null if it does not exist
+     */
+
+    V get(K key, Function<K, V> loader) {
+        long loadGeneration;
+        synchronized(this) {
+            V cached = lookup(key);
+            if(cached != null) {
+                hits++;
+                return copier.apply(cached);
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        V loaded = loader.apply(key);
+        if(loaded != null) {
+            store(key, loaded, loadGeneration);
+        }
+        return loaded;
+    }
+
+    /**
+     * Gets the entities with the given keys, loading all the missing ones with a single call of the loader.
+     *
+     * @param keys the keys of the entities
+     * @param loader loads the entities with the given keys, leaving out the ones that do not exist
+     * @return copies of the found entities keyed by key
+     */
+
+    Map<K, V> getAll(Collection<K> keys, Function<Collection<K>, Map<K, V>> loader) {
+        Map<K, V> found = new HashMap<>();
+        Set<K> missing = new LinkedHashSet<>();
+        long loadGeneration;
+        synchronized(this) {
+            for(K key : new LinkedHashSet<>(keys)) {
+                V cached = lookup(key);
+                if(cached != null) {
+                    hits++;
+                    found.put(key, copier.apply(cached));
+                } else {
+                    misses++;
+                    missing.add(key);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if(!missing.isEmpty()) {
+            Map<K, V> loaded = loader.apply(missing);
+            loaded.forEach((key, value) -> store(key, value, loadGeneration));
+            found.putAll(loaded);
+        }
+        return found;
+    }
+
+    /**
+     * Gets every entity, loading all of them if any was invalidated, evicted or has expired since they
+     * were last loaded together.
+     *
+     * @param loader loads all the entities
+     * @param keyOf gets the key of an entity
+     * @return copies of all the entities, in the order of the last load
+     */
+
+    List<V> getAll(Supplier<List<V>> loader, Function<V, K> keyOf) {
+        long loadGeneration;
+        synchronized(this) {
+            if(allKeys != null && System.nanoTime() - allLoadedAt < ttlNanos) {
+                List<V> values = new ArrayList<>(allKeys.size());
+                for(K key : allKeys) {
+                    Entry<V> entry = entries.get(key);
+                    if(entry == null) {
+                        break;
+                    }
+                    values.add(copier.apply(entry.value()));
+                }
+                if(values.size() == allKeys.size()) {
+                    hits += values.size();
+                    return values;
+                }
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        List<V> loaded = loader.get();
+        long now = System.nanoTime();
+        synchronized(this) {
+            if(loadGeneration == generation && !loaded.isEmpty() && loaded.size() <= maxEntries) {
+                List<K> keys = new ArrayList<>(loaded.size());
+                for(V value : loaded) {
+                    K key = keyOf.apply(value);
+                    entries.put(key, new Entry<>(copier.apply(value), now));
+                    keys.add(key);
+                }
+                allKeys = keys;
+                allLoadedAt = now;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Caches an entity that was just read from the database by another query.
+     *
+     * @param key the key of the entity
+     * @param value the entity
+     */
+
+    synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(copier.apply(value), System.nanoTime()));
+    }
+
+    /**
+     * Removes the entity with the given key, so the next lookup reads it from the database.
+     *
+     * @param key the key of the entity
+     */
+
+    synchronized void invalidate(K key) {
+        entries.remove(key);
+        allKeys = null;
+        generation++;
+    }
+
+    /**
+     * Removes the entities with the given keys.
+     *
+     * @param keys the keys of the entities
+     */
+
+    synchronized void invalidateAll(Collection<K> keys) {
+        keys.forEach(entries::remove);
+        allKeys = null;
+        generation++;
+    }
+
+    /**
+     * Removes every entity.
+     */
+
+    synchronized void invalidateAll() {
+        entries.clear();
+        allKeys = null;
+        generation++;
+    }
+
+    /**
+     * Returns the hits, misses and evictions since the cache was created.
+     *
+     * @return a snapshot of the cache statistics
+     */
+
+    synchronized CacheStats stats() {
+        return new CacheStats(name, hits, misses, evictions, entries.size());
+    }
+
+    /**
+     * Gets a cached value that has not expired, removing it if it has.
+     *
+     * @param key the key of the entity
+     * @return the cached value, or null
+     */
+
+    private V lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if(entry == null) {
+            return null;
+        }
+        if(System.nanoTime() - entry.loadedAt() >= ttlNanos) {
+            entries.remove(key);
+            evictions++;
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Caches a loaded value unless the cache was invalidated while it was being loaded.
+     *
+     * @param key the key of the entity
+     * @param value the loaded entity
+     * @param loadGeneration the generation of the cache when the load started
+     */
+
+    private synchronized void store(K key, V value, long loadGeneration) {
+        if(loadGeneration == generation) {
+            entries.put(key, new Entry<>(copier.apply(value), System.nanoTime()));
+        }
+    }
+}
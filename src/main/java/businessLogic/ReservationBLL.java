@@ -0,0 +1,236 @@
+package businessLogic;
+
+import connection.ConnectionFactory;
+import connection.TransactionManager;
+import dataAccess.ProductDAO;
+import dataAccess.ReservationDAO;
+import dataModel.Reservation;
+import dataModel.StockAvailability;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Business Logic Layer for stock reservations.
+ * A reservation holds stock while a client confirms an order: the stock is taken when it is reserved,
+ * kept when the reservation is confirmed and given back when it is released or expires.
+ * A background sweeper gives back the stock of expired reservations every {@code reservation.sweepIntervalMs}
+ * milliseconds, in batches of {@code reservation.sweepBatchSize} reservations.
+ */
+
+public class ReservationBLL implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReservationBLL.class.getName());
+    private final ReservationDAO reservationDAO;
+    private final ProductDAO productDAO;
+    private final int sweepBatchSize;
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Constructs a ReservationBLL instance and starts its sweeper.
+     * Initializes the DAOs, which join the transaction of the calling thread or borrow pooled connections.
+     */
+
+    public ReservationBLL() {
+        this.reservationDAO = new ReservationDAO();
+        this.productDAO = new ProductDAO();
+        this.sweepBatchSize = ConnectionFactory.getIntProperty("reservation.sweepBatchSize", 500);
+        long interval = ConnectionFactory.getIntProperty("reservation.sweepIntervalMs", 1000);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reservation-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserves stock of a product for the given time. The stock is taken from the product row with a
+     * single statement, or from the shards of the product if the row does not have enough.
+     *
+     * @param productId the ID of the product
+     * @param quantity the quantity to reserve
+     * @param ttl how long the stock is held before it is given back
+     * @return the reservation, whose token confirms or releases it
+     * @throws UnderStockException if there is not enough stock to promise
+     * @throws IllegalArgumentException if the quantity or time to live is not positive or the product does not exist
+     * @throws RuntimeException if there is a database error
+     */
+
+    public Reservation reserve(int productId, int quantity, Duration ttl) throws UnderStockException {
+        if(quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if(ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Reservation time to live must be positive");
+        }
+        StockAvailability availability;
+        try {
+            Reservation reservation = reservationDAO.reserve(productId, quantity, ttl.toMillis());
+            if(reservation == null) {
+                reservation = TransactionManager.inTransaction(() ->
+                        productDAO.tryDecrementShards(productId, quantity)
+                                ? reservationDAO.insertFromShards(productId, quantity, ttl.toMillis()) : null);
+            }
+            if(reservation != null) {
+                TransactionManager.afterCommit(() -> {
+                    EntityCaches.STOCK.invalidate(productId);
+                    StockIndex.shared().decrement(productId, quantity);
+                });
+                return reservation;
+            }
+            availability = reservationDAO.findAvailability(productId);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to reserve stock: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+        if(availability == null) {
+            throw new IllegalArgumentException("Product not found: " + productId);
+        }
+        throw new UnderStockException(productId, quantity, availability.available());
+    }
+
+    /**
+     * Confirms a reservation, so its stock stays taken.
+     *
+     * @param token the token of the reservation
+     * @return the confirmed reservation
+     * @throws IllegalStateException if the reservation has expired or was already confirmed or released
+     * @throws RuntimeException if there is a database error
+     */
+
+    public Reservation confirm(UUID token) {
+        Reservation reservation;
+        try {
+            reservation = reservationDAO.confirm(token);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to confirm reservation: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+        if(reservation == null) {
+            throw new IllegalStateException("Reservation " + token + " has expired or is no longer active");
+        }
+        return reservation;
+    }
+
+    /**
+     * Releases a reservation, giving its stock back to the product row or to its shards, wherever it was taken from.
+     *
+     * @param token the token of the reservation
+     * @return {@code true} if the reservation was released, {@code false} if it was no longer active
+     * @throws RuntimeException if there is a database error
+     */
+
+    public boolean release(UUID token) {
+        try {
+            int productId = reservationDAO.release(token);
+            if(productId < 0) {
+                return false;
+            }
+            stockChanged(List.of(productId));
+            return true;
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to release reservation: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+    }
+
+    /**
+     * Retrieves the stock of a product that can be promised and the stock held by its active reservations.
+     *
+     * @param productId the ID of the product
+     * @return the availability of the product
+     * @throws IllegalArgumentException if the product does not exist
+     * @throws RuntimeException if there is a database error
+     */
+
+    public StockAvailability getAvailability(int productId) {
+        StockAvailability availability;
+        try {
+            availability = reservationDAO.findAvailability(productId);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to read availability: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        }
+        if(availability == null) {
+            throw new IllegalArgumentException("Product not found: " + productId);
+        }
+        return availability;
+    }
+
+    /**
+     * Releases all the expired reservations now, in batches, instead of waiting for the sweeper.
+     *
+     * @return the number of reservations released
+     * @throws RuntimeException if there is a database error
+     */
+
+    public int releaseExpired() {
+        int released = 0;
+        Set<Integer> productIds = new HashSet<>();
+        try {
+            List<Integer> batch;
+            do {
+                batch = reservationDAO.releaseExpired(sweepBatchSize);
+                released += batch.size();
+                productIds.addAll(batch);
+            } while(batch.size() == sweepBatchSize);
+        } catch(SQLException e) {
+            LOGGER.log(Level.SEVERE,"Failed to release expired reservations: " + e.getMessage());
+            throw new RuntimeException("Database error", e);
+        } finally {
+            if(!productIds.isEmpty()) {
+                stockChanged(productIds);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Evicts the cached stock of the given products and has the stock index read it back,
+     * once the transaction that gave the stock back has committed.
+     *
+     * @param productIds the IDs of the products whose stock was given back
+     */
+
+    private static void stockChanged(Collection<Integer> productIds) {
+        TransactionManager.afterCommit(() -> {
+            EntityCaches.STOCK.invalidateAll(productIds);
+            productIds.forEach(productId -> StockIndex.shared().changed(productId));
+        });
+    }
+
+    /**
+     * Runs one sweep of the expired reservations, logging failures so that the next sweep still runs.
+     */
+
+    private void sweep() {
+        try {
+            int released = releaseExpired();
+            if(released > 0) {
+                LOGGER.log(Level.INFO, "Released " + released + " expired reservations");
+            }
+        } catch(RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Reservation sweep failed", e);
+        }
+    }
+
+    /**
+     * Stops the sweeper. Expired reservations are released by the next sweeper that runs.
+     */
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
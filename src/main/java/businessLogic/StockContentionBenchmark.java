@@ -0,0 +1,103 @@
+package businessLogic;
+
+import connection.ConnectionFactory;
+import dataModel.EngineStats;
+import dataModel.Order;
+import dataModel.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures how order throughput on a single hot product scales with the number of stock shards.
+ * Every round restocks the product, splits its stock across the given number of shards (0 keeps the
+ * product row only), places the orders of quantity 1 through an {@link OrderEngine} and prints its statistics.
+ * The product is left unsharded, with the stock it had before the benchmark.
+ *
+ * <p>Usage: {@code StockContentionBenchmark <productId> <clientId> <orders> [shards...]}, for example
+ * {@code StockContentionBenchmark 1 1 20000 0 4 16}. The orders are written to the database.</p>
+ */
+
+public final class StockContentionBenchmark {
+
+    /**
+     * Prevents instantiation.
+     */
+
+    private StockContentionBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the product ID, the client ID, the number of orders per round and the shard counts to compare
+     */
+
+    public static void main(String[] args) {
+        if(args.length < 3) {
+            System.err.println("Usage: StockContentionBenchmark <productId> <clientId> <orders> [shards...]");
+            return;
+        }
+        int productId = Integer.parseInt(args[0]);
+        int clientId = Integer.parseInt(args[1]);
+        int orders = Integer.parseInt(args[2]);
+        List<Integer> rounds = new ArrayList<>();
+        for(int i = 3; i < args.length; i++) {
+            rounds.add(Integer.parseInt(args[i]));
+        }
+        if(rounds.isEmpty()) {
+            rounds = List.of(0, 4, 16);
+        }
+        ProductBLL productBLL = new ProductBLL();
+        OrderBLL orderBLL = new OrderBLL();
+        productBLL.unshardStock(productId);
+        Product product = productBLL.findById(productId);
+        if(product == null) {
+            System.err.println("Product not found: " + productId);
+            return;
+        }
+        int originalStock = product.getCurrentStock();
+        try {
+            for(int shards : rounds) {
+                EngineStats stats = run(productBLL, orderBLL, product, clientId, orders, shards);
+                System.out.printf("shards=%d%n%s%n", shards, stats);
+            }
+        } finally {
+            productBLL.unshardStock(productId);
+            product.setCurrentStock(originalStock);
+            productBLL.updateProduct(product, productId);
+            ConnectionFactory.shutdown();
+        }
+    }
+
+    /**
+     * Runs one round of the benchmark.
+     *
+     * @param productBLL the business logic of the products
+     * @param orderBLL the business logic placing the orders
+     * @param product the hot product
+     * @param clientId the ID of the client placing the orders
+     * @param orders the number of orders
+     * @param shards the number of stock shards, or 0 to keep the product row only
+     * @return the statistics of the round
+     */
+
+    private static EngineStats run(ProductBLL productBLL, OrderBLL orderBLL, Product product, int clientId,
+                                   int orders, int shards) {
+        productBLL.unshardStock(product.getId());
+        product.setCurrentStock(orders);
+        productBLL.updateProduct(product, product.getId());
+        if(shards > 0) {
+            productBLL.shardStock(product.getId(), shards);
+        }
+        List<CompletableFuture<Order>> placed = new ArrayList<>(orders);
+        try(OrderEngine engine = new OrderEngine(orderBLL)) {
+            for(int i = 0; i < orders; i++) {
+                placed.add(engine.submit(new Order(clientId, product.getId(), 1, null)));
+            }
+            CompletableFuture.allOf(placed.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+            return engine.getStats();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package businessLogic;
+
+import connection.ConnectionFactory;
+import dataAccess.ProductDAO;
+import dataModel.ChangeEvent;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the total stock of every product in memory, in a primitive array indexed by product ID,
+ * so stock checks are answered without a database round trip and without boxing.
+ * Product IDs come from a sequence, so the array is dense; products with an ID of {@link #MAX_ID} or more
+ * are not indexed and are checked against the database.
+ * <p>
+ * Staleness: a decrement made through this process is applied to the index before the call that made it returns.
+ * Any other change, by this process or another instance, is read back from the database on the refresher thread
+ * as soon as it is reported, which for other instances is when their change notification arrives, usually a few
+ * milliseconds after the commit. If notifications may have been lost, the index is reloaded on the resynchronization
+ * event of the listener, and the whole index is reloaded every {@code stockIndex.reloadMs} in any case,
+ * which bounds how stale an entry can get.
+ */
+
+final class StockIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(StockIndex.class.getName());
+    static final int UNKNOWN = -1;
+    static final int MAX_ID = 1 << 24;
+    private static StockIndex shared;
+
+    private final ProductDAO productDAO;
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService refresher;
+    private volatile AtomicIntegerArray stocks = new AtomicIntegerArray(0);
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+    private boolean flushScheduled;
+
+    /**
+     * Constructs a StockIndex and has the stock of every product loaded on the refresher thread, so constructing it
+     * does not wait for the database; until the load completes, stock checks use the database.
+     *
+     * @param productDAO the DAO the stock is read with
+     * @param reloadMillis the milliseconds between two full reloads
+     */
+
+    StockIndex(ProductDAO productDAO, long reloadMillis) {
+        this.productDAO = productDAO;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-index-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.execute(this::reload);
+        refresher.scheduleWithFixedDelay(this::reload, reloadMillis, reloadMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the index shared by every business logic instance, loading it and subscribing it to the change
+     * notifications the first time.
+     *
+     * @return the shared stock index
+     */
+
+    static synchronized StockIndex shared() {
+        if(shared == null) {
+            shared = new StockIndex(new ProductDAO(), ConnectionFactory.getIntProperty("stockIndex.reloadMs", 60000));
+            ConnectionFactory.getChangeListener().subscribe(shared::onChange);
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the total stock of a product.
+     *
+     * @param productId the ID of the product
+     * @return the total stock, or {@link #UNKNOWN} if the product is not indexed
+     */
+
+    int stock(int productId) {
+        AtomicIntegerArray current = stocks;
+        return productId >= 0 && productId < current.length() ? current.get(productId) : UNKNOWN;
+    }
+
+    /**
+     * Takes a committed decrement off the stock of a product, then has the stock read back
+     * to correct any change made meanwhile by someone else.
+     *
+     * @param productId the ID of the product
+     * @param quantity the quantity taken
+     */
+
+    void decrement(int productId, int quantity) {
+        resizeLock.readLock().lock();
+        try {
+            AtomicIntegerArray current = stocks;
+            if(productId >= 0 && productId < current.length()) {
+                int stock;
+                do {
+                    stock = current.get(productId);
+                } while(stock != UNKNOWN && !current.compareAndSet(productId, stock, Math.max(0, stock - quantity)));
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+        changed(productId);
+    }
+
+    /**
+     * Has the stock of a product read back from the database on the refresher thread.
+     * The reads of all the products changed meanwhile are combined into a single query.
+     *
+     * @param productId the ID of the changed product
+     */
+
+    synchronized void changed(int productId) {
+        if(dirtyCount == dirty.length) {
+            dirty = Arrays.copyOf(dirty, dirty.length * 2);
+        }
+        dirty[dirtyCount++] = productId;
+        if(!flushScheduled) {
+            flushScheduled = true;
+            refresher.execute(this::flush);
+        }
+    }
+
+    /**
+     * Has the stock of every product read back from the database on the refresher thread.
+     */
+
+    void changedAll() {
+        refresher.execute(this::reload);
+    }
+
+    /**
+     * Reads back the stock of a product changed by any instance.
+     *
+     * @param event the change event
+     */
+
+    private void onChange(ChangeEvent event) {
+        if(!event.affects("product")) {
+            return;
+        }
+        if(event.operation() == ChangeEvent.Operation.RESYNC) {
+            changedAll();
+        } else {
+            changed(event.id());
+        }
+    }
+
+    /**
+     * Reads back the stock of the products changed since the last flush with a single query.
+     * Products that no longer exist are removed from the index.
+     */
+
+    private void flush() {
+        int[] ids;
+        synchronized(this) {
+            ids = Arrays.copyOf(dirty, dirtyCount);
+            dirtyCount = 0;
+            flushScheduled = false;
+        }
+        BitSet found = new BitSet();
+        try {
+            productDAO.findTotalStocks(ids, (productId, stock) -> {
+                put(productId, stock);
+                found.set(productId);
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to refresh the stock index, it is corrected by the next reload: "
+                    + e.getMessage());
+            return;
+        }
+        for(int productId : ids) {
+            if(!found.get(productId)) {
+                put(productId, UNKNOWN);
+            }
+        }
+    }
+
+    /**
+     * Sets the stock of a product, growing the index if the product has a higher ID than any indexed product.
+     *
+     * @param productId the ID of the product
+     * @param stock the total stock, or {@link #UNKNOWN}
+     */
+
+    private void put(int productId, int stock) {
+        if(productId < 0 || productId >= MAX_ID || stock == UNKNOWN && productId >= stocks.length()) {
+            return;
+        }
+        if(productId >= stocks.length()) {
+            resizeLock.writeLock().lock();
+            try {
+                if(productId >= stocks.length()) {
+                    stocks = copyOf(stocks, capacityFor(productId));
+                }
+            } finally {
+                resizeLock.writeLock().unlock();
+            }
+        }
+        resizeLock.readLock().lock();
+        try {
+            stocks.set(productId, stock);
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the stock of every product into a new index and replaces the current one with it.
+     * Decrements applied while the products are read are lost, but each of them has a refresh queued behind it.
+     */
+
+    private void reload() {
+        int[][] loaded = {new int[capacityFor(0)]};
+        Arrays.fill(loaded[0], UNKNOWN);
+        try {
+            productDAO.findTotalStocks(null, (productId, stock) -> {
+                if(productId < 0 || productId >= MAX_ID) {
+                    return;
+                }
+                if(productId >= loaded[0].length) {
+                    int size = loaded[0].length;
+                    loaded[0] = Arrays.copyOf(loaded[0], capacityFor(productId));
+                    Arrays.fill(loaded[0], size, loaded[0].length, UNKNOWN);
+                }
+                loaded[0][productId] = stock;
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the stock index, stock checks use the database: "
+                    + e.getMessage());
+            return;
+        }
+        AtomicIntegerArray fresh = new AtomicIntegerArray(loaded[0]);
+        resizeLock.writeLock().lock();
+        try {
+            stocks = fresh;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the length of an index that can hold the given product ID, doubling as IDs grow.
+     *
+     * @param productId the highest product ID to hold
+     * @return the length of the index
+     */
+
+    private static int capacityFor(int productId) {
+        return Math.min(MAX_ID, Math.max(1024, Integer.highestOneBit(productId) << 1));
+    }
+
+    /**
+     * Copies the index into a larger one, marking the new slots as unknown.
+     *
+     * @param source the current index
+     * @param length the length of the new index
+     * @return the larger index
+     */
+
+    private static AtomicIntegerArray copyOf(AtomicIntegerArray source, int length) {
+        AtomicIntegerArray grown = new AtomicIntegerArray(length);
+        for(int i = 0; i < length; i++) {
+            grown.set(i, i < source.length() ? source.get(i) : UNKNOWN);
+        }
+        return grown;
+    }
+}
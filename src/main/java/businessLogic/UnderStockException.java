@@ -5,11 +5,15 @@ package businessLogic;
  */
 
 public class UnderStockException extends Exception {
+    private final int productId;
+    private final int requested;
+    private final int available;
+
     /**
      * Constructs an UnderStockException with a default error message.
      */
     public UnderStockException() {
-        super("Insufficient product stock");
+        this("Insufficient product stock");
     }
     /**
      * Constructs an UnderStockException with a custom error message.
@@ -18,5 +22,46 @@ public class UnderStockException extends Exception {
      */
     public UnderStockException(String message) {
         super(message);
+        this.productId = -1;
+        this.requested = -1;
+        this.available = -1;
+    }
+    /**
+     * Constructs an UnderStockException for an order of a product that has less stock than requested.
+     *
+     * @param productId the ID of the product
+     * @param requested the quantity ordered
+     * @param available the stock of the product when it was last checked, which may have changed since
+     */
+    public UnderStockException(int productId, int requested, int available) {
+        super("Not enough stock for product ID: " + productId
+                + " (requested " + requested + ", " + available + " in stock when checked)");
+        this.productId = productId;
+        this.requested = requested;
+        this.available = available;
+    }
+    /**
+     * Gets the ID of the product that is under stock.
+     *
+     * @return the product ID, or -1 if unknown
+     */
+    public int getProductId() {
+        return productId;
+    }
+    /**
+     * Gets the quantity that was ordered.
+     *
+     * @return the requested quantity, or -1 if unknown
+     */
+    public int getRequested() {
+        return requested;
+    }
+    /**
+     * Gets the stock that was available when the order was placed.
+     *
+     * @return the available quantity, or -1 if unknown
+     */
+    public int getAvailable() {
+        return available;
     }
 }
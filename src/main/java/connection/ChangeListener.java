@@ -0,0 +1,174 @@
+package connection;
+
+import dataModel.ChangeEvent;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Listens for the change notifications published by the {@code notify_change} trigger and hands them
+ * to the subscribers, so every instance running against the database learns about the rows changed by the others.
+ * The listener holds its own connection outside the pool, since {@code LISTEN} only lasts as long as the session.
+ * PostgreSQL delivers notifications when the transaction that raised them commits, and does not keep them for
+ * sessions that are not listening, so after the connection is lost and opened again the subscribers receive
+ * a {@link ChangeEvent.Operation#RESYNC} event and must assume that anything they cached is stale.
+ * Subscribers are called on the listener thread, in the order they subscribed, and must not block.
+ */
+
+public class ChangeListener implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeListener.class.getName());
+    private static final String CHANNEL = "warehouse_changes";
+
+    private final ConnectionPool.ConnectionSupplier supplier;
+    private final int pollMillis;
+    private final int reconnectMillis;
+    private final List<Consumer<ChangeEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a ChangeListener configured from the {@code notify.*} properties and starts its thread.
+     *
+     * @param supplier opens the connection the listener waits on
+     */
+
+    ChangeListener(ConnectionPool.ConnectionSupplier supplier) {
+        this.supplier = supplier;
+        this.pollMillis = Math.max(1, ConnectionFactory.getIntProperty("notify.pollMs", 500));
+        this.reconnectMillis = Math.max(1, ConnectionFactory.getIntProperty("notify.reconnectMs", 5000));
+        this.thread = new Thread(this::listen, "change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers a subscriber for every change published from now on.
+     *
+     * @param subscriber called with every change event on the listener thread
+     */
+
+    public void subscribe(Consumer<ChangeEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Removes a subscriber.
+     *
+     * @param subscriber the subscriber to remove
+     */
+
+    public void unsubscribe(Consumer<ChangeEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Gets the number of change notifications received since the listener started.
+     * A notification lists every row of a table changed by one statement.
+     *
+     * @return the number of notifications received
+     */
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Listens on the channel until the listener is closed, opening the connection again whenever it is lost.
+     */
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (!closed) {
+            try (Connection connection = supplier.create()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (connectedBefore) {
+                    LOGGER.log(Level.INFO, "Change listener reconnected, changes made meanwhile may have been missed");
+                    publish(ChangeEvent.resync());
+                }
+                connectedBefore = true;
+                PGConnection notifications = connection.unwrap(PGConnection.class);
+                while (!closed) {
+                    PGNotification[] batch = notifications.getNotifications(pollMillis);
+                    if (batch != null) {
+                        for (PGNotification notification : batch) {
+                            received.incrementAndGet();
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (closed) {
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "Change listener lost its connection, retrying in " + reconnectMillis
+                        + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the payload of a notification and publishes an event for every row it lists,
+     * ignoring malformed payloads.
+     *
+     * @param payload the payload of the notification
+     */
+
+    private void dispatch(String payload) {
+        List<ChangeEvent> events;
+        try {
+            events = ChangeEvent.parse(payload);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, e.getMessage());
+            return;
+        }
+        events.forEach(this::publish);
+    }
+
+    /**
+     * Hands an event to every subscriber, so a failing subscriber does not keep the others from being notified.
+     *
+     * @param event the change event
+     */
+
+    private void publish(ChangeEvent event) {
+        for (Consumer<ChangeEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Change subscriber failed on " + event, e);
+            }
+        }
+    }
+
+    /**
+     * Stops listening and closes the connection of the listener within {@code notify.pollMs}.
+     */
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            thread.join(pollMillis * 2L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -12,8 +12,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Connection factory class responsible for creating and managing the connection with the database.
- * It only allows one instance of database connection.
+ * Connection factory class responsible for creating and managing the connections with the database.
+ * Connections are borrowed from a single {@link ConnectionPool} and returned to it when closed.
+ * Change notifications from other instances are received by a single {@link ChangeListener},
+ * started the first time it is requested.
  */
 
 public class ConnectionFactory {
@@ -37,6 +39,8 @@ public class ConnectionFactory {
     private static final String PASS = props.getProperty("db.password");
 
     private static ConnectionFactory singleInstance = new ConnectionFactory();
+    private final ConnectionPool pool = new ConnectionPool(this::createConnection);
+    private ChangeListener changeListener;
 
     /**
      * Private constructor to initialize the JDBC driver.
@@ -50,33 +54,105 @@ public class ConnectionFactory {
     }
 
     /**
-     * Creates and returns a database connection.
+     * Creates and returns a new physical database connection for the pool.
      *
      * @return a Connection object
+     * @throws SQLException if the connection cannot be opened
      */
 
-    private Connection createConnection() {
-        Connection connection = null;
+    private Connection createConnection() throws SQLException {
         try {
-            connection = DriverManager.getConnection(DBURL, USER, PASS);
+            return DriverManager.getConnection(DBURL, USER, PASS);
         } catch (SQLException e) {
             LOGGER.log(Level.WARNING, "An error occurred while trying to connect to the database");
+            throw e;
         }
-        return connection;
     }
 
     /**
-     * Returns a single instance of the database connection.
+     * Borrows a database connection from the pool. Closing the connection returns it to the pool.
      *
      * @return a Connection object
+     * @throws SQLException if no connection becomes available within {@code db.pool.acquireTimeoutMs}
      */
 
-    public static Connection getConnection() {
-        return singleInstance.createConnection();
+    public static Connection getConnection() throws SQLException {
+        return singleInstance.pool.getConnection();
     }
 
     /**
-     * Closes the given database connection.
+     * Returns the connection pool, for example to read its metrics.
+     *
+     * @return the connection pool
+     */
+
+    public static ConnectionPool getPool() {
+        return singleInstance.pool;
+    }
+
+    /**
+     * Returns the listener for the change notifications published by the database triggers,
+     * starting it on its own connection the first time it is requested.
+     *
+     * @return the change listener
+     */
+
+    public static synchronized ChangeListener getChangeListener() {
+        if (singleInstance.changeListener == null) {
+            singleInstance.changeListener = new ChangeListener(singleInstance::createConnection);
+        }
+        return singleInstance.changeListener;
+    }
+
+    /**
+     * Stops the change listener, if it was started, and closes the connection pool and all its idle connections.
+     */
+
+    public static void shutdown() {
+        synchronized (ConnectionFactory.class) {
+            if (singleInstance.changeListener != null) {
+                singleInstance.changeListener.close();
+                singleInstance.changeListener = null;
+            }
+        }
+        singleInstance.pool.close();
+    }
+
+    /**
+     * Returns the value of a configuration property from config.properties.
+     *
+     * @param key the property key
+     * @param defaultValue the value to return if the property is not set
+     * @return the configured value, or the default value
+     */
+
+    public static String getProperty(String key, String defaultValue) {
+        return props.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Returns the value of an integer configuration property from config.properties.
+     *
+     * @param key the property key
+     * @param defaultValue the value to return if the property is not set or is not a number
+     * @return the configured value, or the default value
+     */
+
+    public static int getIntProperty(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Closes the given database connection. Pooled connections are returned to the pool.
      *
      * @param connection the Connection object to close
      */
@@ -0,0 +1,495 @@
+package connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of database connections.
+ * Borrowed connections are handles over a pooled physical connection: closing a handle returns the
+ * connection to the pool, after rolling back any unfinished transaction, instead of closing it.
+ * Connections idle for a while are validated before they are handed out, idle connections above
+ * the minimum size are closed after {@code db.pool.idleTimeoutMs}, and connections held longer than
+ * {@code db.pool.leakThresholdMs} are reported. Capturing the stack trace of the code that borrowed them costs
+ * a stack walk on every borrow, so it is only done when {@code db.pool.leakStackTraces} is set for debugging.
+ */
+
+public class ConnectionPool implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * Opens a new physical connection to the database.
+     */
+
+    @FunctionalInterface
+    interface ConnectionSupplier {
+        Connection create() throws SQLException;
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+
+    private static final class Entry {
+        private final Connection physical;
+        private volatile long lastUsed = System.nanoTime();
+
+        private Entry(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    private final ConnectionSupplier supplier;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutNanos;
+    private final long validationIntervalNanos;
+    private final long leakThresholdNanos;
+    private final boolean leakStackTraces;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Entry> idle = new LinkedBlockingDeque<>();
+    private final Set<Handle> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    /**
+     * Constructs a ConnectionPool configured from the {@code db.pool.*} properties
+     * and starts the housekeeping thread, which opens the minimum number of connections.
+     *
+     * @param supplier opens the physical connections
+     */
+
+    ConnectionPool(ConnectionSupplier supplier) {
+        this.supplier = supplier;
+        this.maxSize = Math.max(1, ConnectionFactory.getIntProperty("db.pool.maxSize", 10));
+        this.minSize = Math.min(maxSize, Math.max(0, ConnectionFactory.getIntProperty("db.pool.minSize", 2)));
+        this.acquireTimeoutMillis = ConnectionFactory.getIntProperty("db.pool.acquireTimeoutMs", 5000);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ConnectionFactory.getIntProperty("db.pool.idleTimeoutMs", 300000));
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(ConnectionFactory.getIntProperty("db.pool.validationIntervalMs", 500));
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(ConnectionFactory.getIntProperty("db.pool.leakThresholdMs", 60000));
+        this.leakStackTraces = Boolean.parseBoolean(ConnectionFactory.getProperty("db.pool.leakStackTraces", "false"));
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ConnectionFactory.getIntProperty("db.pool.housekeepingMs", 30000));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to {@code db.pool.acquireTimeoutMs} for one to become free.
+     * The connection must be closed to return it to the pool.
+     *
+     * @return a handle over a pooled connection
+     * @throws SQLTimeoutException if no connection became free in time
+     * @throws SQLException if the pool is closed or a new connection cannot be opened
+     */
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("No connection available after " + acquireTimeoutMillis + " ms: " + this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            Entry entry = takeIdle();
+            if (entry == null) {
+                entry = open();
+            }
+            long waited = System.nanoTime() - start;
+            acquisitions.incrementAndGet();
+            waitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            Handle handle = new Handle(entry);
+            borrowed.add(handle);
+            peakActive.accumulateAndGet(borrowed.size(), Math::max);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handle);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, validating it if it was idle
+     * for longer than {@code db.pool.validationIntervalMs}. Invalid connections are discarded.
+     *
+     * @return a usable idle connection, or null if there is none
+     */
+
+    private Entry takeIdle() {
+        Entry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (System.nanoTime() - entry.lastUsed < validationIntervalNanos || isValid(entry)) {
+                return entry;
+            }
+            LOGGER.log(Level.WARNING, "Discarding a broken pooled connection");
+            discard(entry);
+        }
+        return null;
+    }
+
+    /**
+     * Checks that the physical connection still works.
+     *
+     * @param entry the pooled connection
+     * @return {@code true} if the connection answered in time
+     */
+
+    private static boolean isValid(Entry entry) {
+        try {
+            return entry.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a new physical connection and counts it in the pool.
+     *
+     * @return the new pooled connection
+     * @throws SQLException if the connection cannot be opened
+     */
+
+    private Entry open() throws SQLException {
+        total.incrementAndGet();
+        try {
+            Connection physical = supplier.create();
+            created.incrementAndGet();
+            return new Entry(physical);
+        } catch (SQLException | RuntimeException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes a physical connection and removes it from the pool.
+     *
+     * @param entry the pooled connection
+     */
+
+    private void discard(Entry entry) {
+        total.decrementAndGet();
+        ConnectionFactory.close(entry.physical);
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, ending any transaction left open.
+     * Connections that cannot be reset are discarded.
+     *
+     * @param entry the pooled connection
+     */
+
+    private void release(Entry entry) {
+        boolean reusable = !closed;
+        try {
+            if (!entry.physical.getAutoCommit()) {
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to reset a returned connection", e);
+            reusable = false;
+        }
+        if (reusable) {
+            entry.lastUsed = System.nanoTime();
+            idle.offerFirst(entry);
+        } else {
+            discard(entry);
+        }
+        permits.release();
+    }
+
+    /**
+     * Closes idle connections above the minimum size, opens connections up to the minimum size
+     * and reports connections held longer than the leak threshold.
+     */
+
+    private void housekeep() {
+        long now = System.nanoTime();
+        for (Entry entry : idle) {
+            if (total.get() <= minSize) {
+                break;
+            }
+            if (now - entry.lastUsed > idleTimeoutNanos && idle.remove(entry)) {
+                evictions.incrementAndGet();
+                discard(entry);
+            }
+        }
+        while (!closed && total.get() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Failed to open a pooled connection: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+        if (leakThresholdNanos > 0) {
+            for (Handle handle : borrowed) {
+                if (!handle.leakReported && now - handle.borrowedAt > leakThresholdNanos) {
+                    handle.leakReported = true;
+                    leaks.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Connection held for more than "
+                            + TimeUnit.NANOSECONDS.toMillis(leakThresholdNanos) + " ms, possible leak"
+                            + (handle.borrowSite == null ? "; set db.pool.leakStackTraces=true to see where" : ""),
+                            handle.borrowSite);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the pool and its idle connections. Borrowed connections are closed when they are returned.
+     */
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        Entry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+        LOGGER.log(Level.INFO, "Connection pool closed: " + this);
+    }
+
+    /**
+     * Gets the maximum number of open connections.
+     *
+     * @return the maximum pool size
+     */
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of connections currently borrowed.
+     *
+     * @return the number of active connections
+     */
+
+    public int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    /**
+     * Gets the number of open connections waiting in the pool.
+     *
+     * @return the number of idle connections
+     */
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of open physical connections, borrowed or idle.
+     *
+     * @return the number of open connections
+     */
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    /**
+     * Gets the highest number of connections borrowed at the same time.
+     *
+     * @return the peak number of active connections
+     */
+
+    public int getPeakActiveConnections() {
+        return peakActive.get();
+    }
+
+    /**
+     * Gets the fraction of the maximum pool size currently borrowed.
+     *
+     * @return the utilization between 0 and 1
+     */
+
+    public double getUtilization() {
+        return (double) borrowed.size() / maxSize;
+    }
+
+    /**
+     * Gets the number of connections handed out.
+     *
+     * @return the number of successful borrows
+     */
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * Gets the mean time spent waiting for a connection, including opening new ones.
+     *
+     * @return the average wait in milliseconds
+     */
+
+    public double getAverageWaitMillis() {
+        long count = acquisitions.get();
+        return count == 0 ? 0 : waitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Gets the longest time spent waiting for a connection.
+     *
+     * @return the maximum wait in milliseconds
+     */
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Gets the number of borrows that failed because no connection became free in time.
+     *
+     * @return the number of acquire timeouts
+     */
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Gets the number of physical connections opened.
+     *
+     * @return the number of connections created
+     */
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * Gets the number of idle connections closed after {@code db.pool.idleTimeoutMs}.
+     *
+     * @return the number of evictions
+     */
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of connections reported as possible leaks.
+     *
+     * @return the number of leak reports
+     */
+
+    public long getLeaks() {
+        return leaks.get();
+    }
+
+    /**
+     * Returns a summary of the pool state and counters.
+     *
+     * @return formatted string with the pool size, utilization and wait times
+     */
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[active=%d, idle=%d, max=%d, utilization=%.2f, avg wait=%.2f ms, "
+                        + "max wait=%.2f ms, timeouts=%d, created=%d, evictions=%d, leaks=%d]",
+                getActiveConnections(), getIdleConnections(), maxSize, getUtilization(), getAverageWaitMillis(),
+                getMaxWaitMillis(), timeouts.get(), created.get(), evictions.get(), leaks.get());
+    }
+
+    /**
+     * Invocation handler of a borrowed connection. Forwards calls to the physical connection until
+     * the handle is closed, which returns the connection to the pool; later calls fail.
+     */
+
+    private final class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final long borrowedAt = System.nanoTime();
+        private final Throwable borrowSite;
+        private volatile boolean leakReported;
+        private volatile boolean returned;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+            this.borrowSite = leakThresholdNanos > 0 && leakStackTraces ? new Throwable("Connection borrowed here") : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        borrowed.remove(this);
+                        release(entry);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || entry.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled " + entry.physical;
+                }
+                default -> {
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(entry.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs units of work in database transactions bound to the current thread.
+ * The transaction borrows one pooled connection, which every DAO operation on the same thread
+ * runs on until the unit of work ends, so concurrent threads never share a transaction.
+ * Java 17 has no {@code ScopedValue}, so the binding is kept in a {@link ThreadLocal}
+ * that is always restored when the unit of work ends.
+ */
+
+public final class TransactionManager {
+
+    private static final Logger LOGGER = Logger.getLogger(TransactionManager.class.getName());
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    /**
+     * How a unit of work relates to the transaction already bound to the thread.
+     */
+
+    public enum Propagation {
+        /** Joins the current transaction, or starts a new one if there is none. */
+        REQUIRED,
+        /** Suspends the current transaction, if any, and runs in a new one on another connection. */
+        REQUIRES_NEW,
+        /** Runs in a savepoint of the current transaction, or in a new transaction if there is none. */
+        NESTED,
+        /** Joins the current transaction and fails if there is none. */
+        MANDATORY
+    }
+
+    /**
+     * A unit of work run in a transaction.
+     *
+     * @param <R> the type of the result
+     * @param <E> the type of the checked exception thrown by the work, besides SQLException
+     */
+
+    @FunctionalInterface
+    public interface TransactionalWork<R, E extends Exception> {
+        R run() throws E, SQLException;
+    }
+
+    /**
+     * The transaction bound to a thread.
+     */
+
+    private static final class Transaction {
+        private final Connection connection;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private boolean rollbackOnly;
+
+        private Transaction(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+
+    private TransactionManager() {
+    }
+
+    /**
+     * Runs the work in the current transaction, or in a new one if there is none.
+     *
+     * @param work the unit of work
+     * @param <R> the type of the result
+     * @param <E> the type of the checked exception thrown by the work
+     * @return the result of the work
+     * @throws E if the work fails, after the transaction it started was rolled back
+     * @throws SQLException if the work fails or the transaction cannot be committed
+     */
+
+    public static <R, E extends Exception> R inTransaction(TransactionalWork<R, E> work) throws E, SQLException {
+        return inTransaction(Propagation.REQUIRED, work);
+    }
+
+    /**
+     * Runs the work in a transaction according to the propagation rule.
+     * A transaction started here is committed when the work returns and rolled back when it throws.
+     * When a joined unit of work throws, the enclosing transaction is marked rollback-only,
+     * so it is rolled back even if the exception is caught by the caller.
+     *
+     * @param propagation how the work relates to the current transaction
+     * @param work the unit of work
+     * @param <R> the type of the result
+     * @param <E> the type of the checked exception thrown by the work
+     * @return the result of the work
+     * @throws E if the work fails
+     * @throws SQLException if the work fails or the transaction cannot be committed
+     * @throws IllegalStateException if the propagation is MANDATORY and there is no current transaction
+     */
+
+    public static <R, E extends Exception> R inTransaction(Propagation propagation, TransactionalWork<R, E> work)
+            throws E, SQLException {
+        Transaction current = CURRENT.get();
+        return switch (propagation) {
+            case REQUIRED -> current != null ? join(current, work) : begin(null, work);
+            case REQUIRES_NEW -> begin(current, work);
+            case NESTED -> current != null ? savepoint(current, work) : begin(null, work);
+            case MANDATORY -> {
+                if (current == null) {
+                    throw new IllegalStateException("No transaction is active on " + Thread.currentThread().getName());
+                }
+                yield join(current, work);
+            }
+        };
+    }
+
+    /**
+     * Gets the connection of the transaction bound to the current thread.
+     *
+     * @return the transaction's connection, or null if no transaction is active
+     */
+
+    public static Connection currentConnection() {
+        Transaction current = CURRENT.get();
+        return current == null ? null : current.connection;
+    }
+
+    /**
+     * Checks whether a transaction is bound to the current thread.
+     *
+     * @return {@code true} if a transaction is active
+     */
+
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Marks the current transaction so that it is rolled back instead of committed.
+     *
+     * @throws IllegalStateException if no transaction is active
+     */
+
+    public static void setRollbackOnly() {
+        Transaction current = CURRENT.get();
+        if (current == null) {
+            throw new IllegalStateException("No transaction is active on " + Thread.currentThread().getName());
+        }
+        current.rollbackOnly = true;
+    }
+
+    /**
+     * Runs the action once the current transaction has committed, or right away if no transaction is active.
+     * Meant for updates of in-memory state that must only reflect committed writes, such as caches.
+     * The action is dropped if the transaction, or the savepoint it was registered in, is rolled back.
+     * Actions run in registration order on the committing thread; an action that throws is logged and skipped.
+     *
+     * @param action the action to run after the commit
+     */
+
+    public static void afterCommit(Runnable action) {
+        Transaction current = CURRENT.get();
+        if (current == null) {
+            action.run();
+        } else {
+            current.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Runs the work in the given transaction, marking it rollback-only if the work fails.
+     *
+     * @param transaction the current transaction
+     * @param work the unit of work
+     * @return the result of the work
+     */
+
+    private static <R, E extends Exception> R join(Transaction transaction, TransactionalWork<R, E> work)
+            throws E, SQLException {
+        try {
+            return work.run();
+        } catch (Exception e) {
+            transaction.rollbackOnly = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the work in a new transaction on a newly borrowed connection, suspending the given one.
+     *
+     * @param suspended the transaction to restore afterwards, or null
+     * @param work the unit of work
+     * @return the result of the work
+     */
+
+    private static <R, E extends Exception> R begin(Transaction suspended, TransactionalWork<R, E> work)
+            throws E, SQLException {
+        try (Connection connection = ConnectionFactory.getConnection()) {
+            Transaction transaction = new Transaction(connection);
+            connection.setAutoCommit(false);
+            CURRENT.set(transaction);
+            R result;
+            try {
+                result = work.run();
+            } catch (Exception e) {
+                rollback(connection);
+                throw e;
+            } finally {
+                restore(suspended);
+            }
+            if (transaction.rollbackOnly) {
+                rollback(connection);
+                throw new SQLException("Transaction was marked rollback-only and has been rolled back");
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+            runAfterCommit(transaction);
+            return result;
+        }
+    }
+
+    /**
+     * Runs the work in a savepoint of the given transaction, rolling back to the savepoint if the work fails.
+     * A failed nested unit of work does not mark the enclosing transaction rollback-only.
+     *
+     * @param transaction the current transaction
+     * @param work the unit of work
+     * @return the result of the work
+     */
+
+    private static <R, E extends Exception> R savepoint(Transaction transaction, TransactionalWork<R, E> work)
+            throws E, SQLException {
+        Savepoint savepoint = transaction.connection.setSavepoint();
+        boolean rollbackOnly = transaction.rollbackOnly;
+        int registered = transaction.afterCommit.size();
+        R result;
+        try {
+            result = work.run();
+        } catch (Exception e) {
+            transaction.connection.rollback(savepoint);
+            transaction.rollbackOnly = rollbackOnly;
+            transaction.afterCommit.subList(registered, transaction.afterCommit.size()).clear();
+            throw e;
+        }
+        transaction.connection.releaseSavepoint(savepoint);
+        return result;
+    }
+
+    /**
+     * Runs the actions registered with {@link #afterCommit} in a committed transaction.
+     *
+     * @param transaction the committed transaction
+     */
+
+    private static void runAfterCommit(Transaction transaction) {
+        for (Runnable action : transaction.afterCommit) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "After-commit action failed", e);
+            }
+        }
+    }
+
+    /**
+     * Rolls back the transaction of the connection, logging failures.
+     *
+     * @param connection the connection of the transaction
+     */
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Rollback failed", e);
+        }
+    }
+
+    /**
+     * Binds the given transaction to the current thread again, or clears the binding.
+     *
+     * @param transaction the transaction to restore, or null
+     */
+
+    private static void restore(Transaction transaction) {
+        if (transaction == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(transaction);
+        }
+    }
+}
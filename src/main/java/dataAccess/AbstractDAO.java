@@ -1,11 +1,20 @@
 package dataAccess;
 
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.*;
+import connection.ConnectionFactory;
+
+import java.lang.reflect.ParameterizedType;
 import java.sql.*;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -21,41 +30,64 @@ public abstract class AbstractDAO<T> {
 
     protected static final Logger LOGGER = Logger.getLogger(AbstractDAO.class.getName());
     private final Class<T> type;
-    protected final Connection connection;
+    private final EntityMapper<T> mapper;
+    private final SqlTemplates sql;
+    private final int valueCount;
+    private final int batchSize = ConnectionFactory.getIntProperty("db.batchSize", 500);
+    private final int fetchSize = ConnectionFactory.getIntProperty("db.fetchSize", 1000);
+    private final int idChunkSize = ConnectionFactory.getIntProperty("db.idChunkSize", 1000);
+    private final ConnectionScope scope;
+
+    /**
+     * Constructor for AbstractDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public AbstractDAO() {
+        this(null);
+    }
 
     /**
-     * Constructor for AbstractDAO.
+     * Constructor for AbstractDAO that runs every operation on the given connection.
+     * The connection is not closed by the DAO.
      *
-     * @param connection the database connection to use for CRUD operations
+     * @param connection the database connection to use for CRUD operations, or null to borrow pooled connections
      */
 
     @SuppressWarnings("unchecked")
     public AbstractDAO(Connection connection) {
-        this.connection = connection;
+        this.scope = new ConnectionScope(connection);
         this.type = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
-
+        this.mapper = EntityMapper.of(type);
+        this.sql = SqlTemplates.of(type);
+        this.valueCount = mapper.valueColumns().length;
     }
 
     /**
-     * Converts camelCase field name to snake_case to match database column names.
+     * Runs the work on the connection given to the constructor, on the connection of the current transaction,
+     * or on a pooled connection borrowed for its duration.
      *
-     * @param fieldName the camelCase field name to be converted
-     * @return the snake_case field name
+     * @param work the work to run
+     * @param <R> the type of the result
+     * @return the result of the work
+     * @throws SQLException if no connection is available or the work fails
      */
 
-    private String toSnakeCase(String fieldName) {
-        return fieldName.replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase();
+    protected <R> R withConnection(ConnectionScope.SqlWork<R> work) throws SQLException {
+        return scope.call(work);
     }
 
     /**
-     * Creates a SQL select query to retrieve an entity by field.
+     * Returns a cached prepared statement for the given SQL on the given connection.
+     * The returned statement must not be closed by the caller.
      *
-     * @param field the field name to filter by
-     * @return the SQL select query
+     * @param connection the connection of the current operation
+     * @param sql the SQL of the statement
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
      */
 
-    private String createSelectQuery(String field) {
-        return "SELECT * FROM " + type.getSimpleName().toLowerCase() + " WHERE " + toSnakeCase(field) + " = ?";
+    protected PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return StatementCache.forConnection(connection).prepare(sql);
     }
 
     /**
@@ -66,16 +98,147 @@ public abstract class AbstractDAO<T> {
 
     public List<T> findAll() {
         List<T> list = new ArrayList<>();
-        String query = "SELECT * FROM \"" + type.getSimpleName().toLowerCase() + "\"";
-        try(Statement statement = connection.createStatement();
-            ResultSet resultSet = statement.executeQuery(query)) {
-            list = createObjects(resultSet);
+        try {
+            list = withConnection(connection -> {
+                try(ResultSet resultSet = prepare(connection, sql.selectAll()).executeQuery()) {
+                    return createObjects(resultSet);
+                }
+            });
         } catch(SQLException e) {
             LOGGER.log(Level.WARNING, "Failed to findAll for " + type.getSimpleName(), e);
         }
         return list;
     }
 
+    /**
+     * Finds the entities with the given IDs using {@code id = ANY(?)} queries.
+     * Large ID sets are split into chunks of {@code db.idChunkSize} IDs, one query per chunk.
+     *
+     * @param ids the IDs of the entities to find
+     * @return the found entities keyed by ID; IDs that do not exist are missing from the map
+     */
+
+    public Map<Integer, T> findByIds(Collection<Integer> ids) {
+        Map<Integer, T> found = new HashMap<>();
+        if(ids.isEmpty()) {
+            return found;
+        }
+        Integer[] distinct = new LinkedHashSet<>(ids).toArray(new Integer[0]);
+        try {
+            withConnection(connection -> {
+                PreparedStatement statement = prepare(connection, sql.selectByIds());
+                for(int from = 0; from < distinct.length; from += idChunkSize) {
+                    Integer[] chunk = Arrays.copyOfRange(distinct, from, Math.min(from + idChunkSize, distinct.length));
+                    Array array = connection.createArrayOf("integer", chunk);
+                    try {
+                        statement.setArray(1, array);
+                        try(ResultSet resultSet = statement.executeQuery()) {
+                            CursorStream.RowReader<T> reader = mapper.reader(resultSet);
+                            int idColumn = resultSet.findColumn(EntityMapper.ID);
+                            while(resultSet.next()) {
+                                found.put(resultSet.getInt(idColumn), reader.read(resultSet));
+                            }
+                        }
+                    } finally {
+                        array.free();
+                    }
+                }
+                return found;
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to findByIds for " + type.getSimpleName(), e);
+        }
+        return found;
+    }
+
+    /**
+     * Finds a page of entities sorted by ID, starting after the given ID.
+     *
+     * @param afterId the ID of the last entity of the previous page, or 0 for the first page
+     * @param limit the maximum number of entities in the page
+     * @return the entities of the page
+     */
+
+    public List<T> findPage(int afterId, int limit) {
+        return findPage(afterId, limit, EntityMapper.ID);
+    }
+
+    /**
+     * Finds a page of entities sorted by the given column, starting after the entity with the given ID.
+     * Uses keyset pagination instead of OFFSET, so the cost of a page does not depend on its position.
+     * The ID breaks ties between equal values of the sort column.
+     *
+     * @param afterId the ID of the last entity of the previous page, or 0 for the first page
+     * @param limit the maximum number of entities in the page
+     * @param sortColumn the column or field name to sort by
+     * @return the entities of the page, or an empty list if the entity with {@code afterId} no longer exists
+     * @throws IllegalArgumentException if the sort column is not a column of the entity
+     */
+
+    public List<T> findPage(int afterId, int limit, String sortColumn) {
+        String column = EntityMapper.toSnakeCase(sortColumn);
+        if(!Arrays.asList(mapper.columns()).contains(column)) {
+            throw new IllegalArgumentException("Unknown column " + sortColumn + " for " + type.getSimpleName());
+        }
+        boolean first = afterId <= 0;
+        try {
+            return withConnection(connection -> {
+                PreparedStatement statement = prepare(connection, sql.page(column, first));
+                int index = 1;
+                if(!first) {
+                    statement.setInt(index++, afterId);
+                }
+                statement.setInt(index, limit);
+                try(ResultSet resultSet = statement.executeQuery()) {
+                    return createObjects(resultSet);
+                }
+            });
+        } catch(SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to findPage for " + type.getSimpleName(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Streams all instances of the entity type from a server-side cursor,
+     * fetching {@code db.fetchSize} rows per round trip.
+     *
+     * @return a lazy stream of all entities, which must be closed if not fully consumed
+     * @throws SQLException if the query cannot be executed
+     */
+
+    public Stream<T> stream() throws SQLException {
+        return stream(fetchSize);
+    }
+
+    /**
+     * Streams all instances of the entity type from a server-side cursor.
+     * Rows are mapped lazily, so memory use does not depend on the size of the table.
+     * Unless a transaction is already active, the cursor runs in its own read transaction
+     * that ends when the stream is closed. A pooled connection is held until then.
+     *
+     * @param fetchSize the number of rows fetched per round trip
+     * @return a lazy stream of all entities, which must be closed if not fully consumed
+     * @throws SQLException if the query cannot be executed
+     */
+
+    public Stream<T> stream(int fetchSize) throws SQLException {
+        return scope.stream(sql.selectAll(), statement -> { }, fetchSize, mapper::reader);
+    }
+
+    /**
+     * Passes every instance of the entity type to the given action, reading them from a server-side cursor.
+     *
+     * @param action the action to perform on each entity
+     * @throws SQLException if the query cannot be executed
+     */
+
+    public void forEach(Consumer<? super T> action) throws SQLException {
+        try(Stream<T> entities = stream()) {
+            entities.forEach(action);
+        }
+    }
+
     /**
      * Finds a single entity by its ID.
      *
@@ -84,13 +247,15 @@ public abstract class AbstractDAO<T> {
      */
 
     public T findById(int id) {
-        String query = createSelectQuery("id");
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setInt(1, id);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                List<T> results = createObjects(resultSet);
-                return results.isEmpty() ? null : results.get(0);
-            }
+        try {
+            return withConnection(connection -> {
+                PreparedStatement statement = prepare(connection, sql.selectById());
+                statement.setInt(1, id);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<T> results = createObjects(resultSet);
+                    return results.isEmpty() ? null : results.get(0);
+                }
+            });
         } catch (SQLException e) {
             LOGGER.log(Level.WARNING, "Failed to findById for " + type.getSimpleName(), e);
             return null;
@@ -99,7 +264,7 @@ public abstract class AbstractDAO<T> {
 
     /**
      * Creates a list of entities from a ResultSet.
-     * Uses reflection to instantiate entities and map fields.
+     * Uses the entity's {@link EntityMapper}, which is compiled once per entity class.
      *
      * @param resultSet the ResultSet containing data
      * @return a list of entities
@@ -107,38 +272,21 @@ public abstract class AbstractDAO<T> {
      */
 
     List<T> createObjects(ResultSet resultSet) throws SQLException {
-        List<T> list = new ArrayList<T>();
-        try {
-            Constructor<T> ctor = type.getDeclaredConstructor();
-            ctor.setAccessible(true);
-            while (resultSet.next()) {
-                T instance = ctor.newInstance();
-                Stream.of(type.getDeclaredFields()).forEach(field -> {
-                    String fieldName = field.getName();
-                    String columnName = toSnakeCase(fieldName);
-                    try {
-                        Object value = resultSet.getObject(columnName);
-                        if(value != null) {
-                            if (field.getType() == double.class && value instanceof Number) {
-                                value = ((Number) value).doubleValue();
-                            } else if (field.getType() == int.class && value instanceof Number) {
-                                value = ((Number) value).intValue();
-                            } else if (field.getType() == LocalDateTime.class && value instanceof Timestamp) {
-                                value = ((Timestamp) value).toLocalDateTime();
-                            }
-                            PropertyDescriptor pd = new PropertyDescriptor(fieldName, type);
-                            pd.getWriteMethod().invoke(instance, value);
-                        }
-                    } catch(Exception e) {
-                        throw new RuntimeException("Reflection failed for field " + fieldName, e);
-                    }
-                });
-                list.add(instance);
-            }
-        } catch (Exception e) {
-            throw new SQLException("Reflection failed for " + type.getSimpleName(), e);
-        }
-        return list;
+        return mapper.mapAll(resultSet);
+    }
+
+    /**
+     * Binds the values of the entity to the parameters of an insert or update statement.
+     *
+     * @param statement the statement to bind
+     * @param t the entity providing the values
+     * @return the number of parameters bound
+     * @throws SQLException if a parameter cannot be set
+     */
+
+    private int bindValues(PreparedStatement statement, T t) throws SQLException {
+        mapper.bindValues(statement, t);
+        return valueCount;
     }
 
     /**
@@ -150,119 +298,306 @@ public abstract class AbstractDAO<T> {
      */
 
     public T insert(T t) throws SQLException {
-       StringBuilder columns = new StringBuilder();
-       StringBuilder placeHolders = new StringBuilder();
-       List<Object> values = new ArrayList<>();
-       Stream.of(type.getDeclaredFields()).filter(field -> !field.getName().equals("id")).forEach(field -> {
-           columns.append(toSnakeCase(field.getName())).append(",");
-           placeHolders.append("?,");
-           try {
-               field.setAccessible(true);
-               values.add(field.get(t));
-           } catch(IllegalAccessException e) {
-               throw new RuntimeException("Failed to access field: " + field.getName(), e);
-           }
-       });
-        columns.deleteCharAt(columns.length() - 1);
-        placeHolders.deleteCharAt(placeHolders.length() - 1);
-        String sql = "INSERT INTO \"" + type.getSimpleName().toLowerCase() + "\" (" + columns + ") VALUES (" + placeHolders + ")";
-        try(PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-           for(int i = 0; i < values.size(); i++) {
-               statement.setObject(i + 1, values.get(i));
-           }
-           statement.executeUpdate();
-           try(ResultSet rs = statement.getGeneratedKeys()) {
-               if(rs.next()) {
-                   Field idField = type.getDeclaredField("id");
-                   idField.setAccessible(true);
-                   idField.set(t, rs.getInt(1));
-               }
-           } catch (NoSuchFieldException | IllegalAccessException e) {
-               throw new RuntimeException(e);
-           }
+        return withConnection(connection -> {
+            PreparedStatement statement = StatementCache.forConnection(connection)
+                    .prepare(sql.insert(), Statement.RETURN_GENERATED_KEYS);
+            bindValues(statement, t);
+            statement.executeUpdate();
+            try(ResultSet rs = statement.getGeneratedKeys()) {
+                if(rs.next()) {
+                    mapper.setId(t, rs.getInt(1));
+                }
+            }
             return t;
-       }
+        });
     }
 
     /**
-     * Updates an existing entity in the database.
+     * Updates an existing entity in the database, writing every column.
+     * If the entity is versioned, the update only succeeds if the row still has the version of the entity,
+     * and the version of the entity is incremented.
      *
      * @param t the entity to update
      * @param id the ID of the entity to update
      * @return the updated entity
+     * @throws StaleEntityException if the entity is versioned and its row was changed since it was read
      * @throws SQLException if there is an error during the update
      */
 
     public T update(T t, int id) throws SQLException {
-        StringBuilder setClause = new StringBuilder();
-        List<Object> values = new ArrayList<>();
-        Stream.of(type.getDeclaredFields()).filter(field -> !field.getName().equals("id")).forEach(field -> {
-            setClause.append(toSnakeCase(field.getName())).append("=?,");
-            try {
-                field.setAccessible(true);
-                values.add(field.get(t));
-            } catch(IllegalAccessException e) {
-                throw new RuntimeException("Failed to access field: " + field.getName(), e);
+        return withConnection(connection -> {
+            PreparedStatement statement = prepare(connection, sql.update());
+            int count = bindValues(statement, t);
+            statement.setInt(count + 1, id);
+            int version = bindVersion(statement, count + 2, t);
+            if(statement.executeUpdate() == 0 && version >= 0) {
+                throw new StaleEntityException(type, id, version);
             }
+            if(version >= 0) {
+                mapper.setVersion(t, version + 1);
+            }
+            return t;
         });
-        String sql = "UPDATE \"" + type.getSimpleName().toLowerCase() + "\" SET " + setClause.deleteCharAt(setClause.length()-1) + " WHERE id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            for(int i = 0; i < values.size(); i++) {
-                statement.setObject(i + 1, values.get(i));
+    }
+
+    /**
+     * Updates only the columns whose values differ between the entity and the original it was edited from,
+     * so concurrent changes to the other columns, such as stock decrements, are not overwritten.
+     * Nothing is sent to the database if no column changed.
+     * If the entity is versioned, the update only succeeds if the row still has the version of the original,
+     * and the version of the entity is incremented.
+     *
+     * @param t the entity with the changed values
+     * @param original the entity as it was read from the database
+     * @param id the ID of the entity to update
+     * @return the updated entity
+     * @throws StaleEntityException if the entity is versioned and its row was changed since it was read
+     * @throws SQLException if there is an error during the update
+     */
+
+    public T update(T t, T original, int id) throws SQLException {
+        Object[] values = mapper.values(t);
+        Object[] originalValues = mapper.values(original);
+        int versionIndex = mapper.versionIndex();
+        String[] valueColumns = mapper.valueColumns();
+        List<String> columns = new ArrayList<>();
+        List<Object> changed = new ArrayList<>();
+        for(int i = 0; i < values.length; i++) {
+            if(i != versionIndex && !Objects.equals(values[i], originalValues[i])) {
+                columns.add(valueColumns[i]);
+                changed.add(values[i]);
             }
-            statement.setInt(values.size() + 1, id);
-            statement.executeUpdate();
+        }
+        if(columns.isEmpty()) {
             return t;
         }
+        return withConnection(connection -> {
+            PreparedStatement statement = prepare(connection, sql.update(columns, versionIndex >= 0));
+            for(int i = 0; i < changed.size(); i++) {
+                statement.setObject(i + 1, changed.get(i));
+            }
+            statement.setInt(changed.size() + 1, id);
+            int version = bindVersion(statement, changed.size() + 2, original);
+            if(statement.executeUpdate() == 0 && version >= 0) {
+                throw new StaleEntityException(type, id, version);
+            }
+            if(version >= 0) {
+                mapper.setVersion(t, version + 1);
+            }
+            return t;
+        });
     }
 
     /**
-     * Deletes an entity from the database by its ID.
+     * Binds the version of a versioned entity as the expected version of an update.
      *
-     * @param id the ID of the entity to delete
+     * @param statement the update statement
+     * @param parameter the index of the expected version parameter
+     * @param t the entity providing the version
+     * @return the bound version, or -1 if the entity is not versioned
+     * @throws SQLException if the parameter cannot be set
      */
 
-    public void delete(int id) {
-        String sql = "DELETE FROM \"" + type.getSimpleName().toLowerCase() + "\" WHERE id = ?";
-        try(PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, id);
-            statement.executeUpdate();
-        } catch(SQLException e) {
-            LOGGER.log(Level.WARNING, type.getName() + "DAO:delete " + e.getMessage());
+    private int bindVersion(PreparedStatement statement, int parameter, T t) throws SQLException {
+        int versionIndex = mapper.versionIndex();
+        if(versionIndex < 0) {
+            return -1;
         }
+        int version = (Integer) mapper.values(t)[versionIndex];
+        statement.setInt(parameter, version);
+        return version;
     }
 
     /**
-     * Begins a database transaction by disabling auto-commit.
+     * Inserts all the given entities using JDBC batches of {@code db.batchSize} rows.
+     * The rows are written in a single transaction, or in the caller's transaction if one is active,
+     * and the generated ID is set on every entity.
      *
-     * @throws SQLException if there is an error starting the transaction
+     * @param entities the entities to insert
+     * @return the inserted entities with their generated IDs
+     * @throws SQLException if there is an error during the insert, in which case nothing is written
      */
 
-    public void beginTransaction() throws SQLException {
-        connection.setAutoCommit(false);
+    public List<T> insertAll(List<T> entities) throws SQLException {
+        if(entities.isEmpty()) {
+            return entities;
+        }
+        return withConnection(connection -> inTransaction(connection, () -> {
+            PreparedStatement statement = StatementCache.forConnection(connection)
+                    .prepare(sql.insert(), Statement.RETURN_GENERATED_KEYS);
+            statement.clearBatch();
+            for(int from = 0; from < entities.size(); from += batchSize) {
+                List<T> chunk = entities.subList(from, Math.min(from + batchSize, entities.size()));
+                for(T t : chunk) {
+                    bindValues(statement, t);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try(ResultSet rs = statement.getGeneratedKeys()) {
+                    for(T t : chunk) {
+                        if(!rs.next()) {
+                            throw new SQLException("Missing generated key for " + type.getSimpleName());
+                        }
+                        mapper.setId(t, rs.getInt(EntityMapper.ID));
+                    }
+                }
+            }
+            return entities;
+        }));
     }
 
     /**
-     * Commits the current database transaction.
+     * Updates all the given entities using JDBC batches of {@code db.batchSize} rows.
+     * The rows are written in a single transaction, or in the caller's transaction if one is active.
+     * Versioned entities are checked and incremented like in {@link #update(Object, int)}.
      *
-     * @throws SQLException if there is an error committing the transaction
+     * @param entities the entities to update, keyed by their ID
+     * @return the updated entities
+     * @throws StaleEntityException if a versioned row was changed since its entity was read,
+     *                              in which case nothing is written
+     * @throws SQLException if there is an error during the update, in which case nothing is written
      */
 
-    public void commit() throws SQLException {
-        connection.commit();
-        connection.setAutoCommit(true);
+    public Map<Integer, T> updateAll(Map<Integer, T> entities) throws SQLException {
+        if(entities.isEmpty()) {
+            return entities;
+        }
+        return withConnection(connection -> inTransaction(connection, () -> {
+            PreparedStatement statement = prepare(connection, sql.update());
+            statement.clearBatch();
+            List<Map.Entry<Integer, T>> entries = new ArrayList<>(entities.entrySet());
+            int[] versions = new int[entries.size()];
+            for(int from = 0; from < entries.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, entries.size());
+                for(int i = from; i < to; i++) {
+                    int count = bindValues(statement, entries.get(i).getValue());
+                    statement.setInt(count + 1, entries.get(i).getKey());
+                    versions[i] = bindVersion(statement, count + 2, entries.get(i).getValue());
+                    statement.addBatch();
+                }
+                checkVersions(statement.executeBatch(), entries, versions, from);
+            }
+            if(mapper.versionIndex() >= 0) {
+                for(int i = 0; i < entries.size(); i++) {
+                    mapper.setVersion(entries.get(i).getValue(), versions[i] + 1);
+                }
+            }
+            return entities;
+        }));
     }
 
     /**
-     * Rolls back the current database transaction.
+     * Checks the update counts of a batch of versioned updates.
+     *
+     * @param counts the update counts of the batch
+     * @param entries the updated entities keyed by ID
+     * @param versions the versions bound for the entities
+     * @param from the index of the first entity of the batch
+     * @throws StaleEntityException if a row was changed since its entity was read
      */
 
-    public void rollback() {
+    private void checkVersions(int[] counts, List<Map.Entry<Integer, T>> entries, int[] versions, int from)
+            throws StaleEntityException {
+        if(mapper.versionIndex() < 0) {
+            return;
+        }
+        for(int i = 0; i < counts.length; i++) {
+            if(counts[i] == 0) {
+                throw new StaleEntityException(type, entries.get(from + i).getKey(), versions[from + i]);
+            }
+        }
+    }
+
+    /**
+     * Bulk loads entities with {@code COPY} into a temporary staging table and merges them into the entity table.
+     * The staging table is dropped at the end of the transaction. Everything runs in a single transaction,
+     * or in the caller's transaction if one is active.
+     *
+     * @param stagingTable the definition of the staging table, used as {@code CREATE TEMP TABLE <stagingTable>}
+     * @param copySql the {@code COPY <staging> (...) FROM STDIN WITH (FORMAT csv)} statement
+     * @param entities the entities to load, read lazily
+     * @param fields converts an entity to the values of the COPY column list
+     * @param mergeSql the statement moving the staged rows into the entity table
+     * @return the number of rows affected by the merge
+     * @throws SQLException if there is an error during the load, in which case nothing is written
+     */
+
+    protected int copyImport(String stagingTable, String copySql, Iterator<T> entities,
+                             Function<T, Object[]> fields, String mergeSql) throws SQLException {
+        return withConnection(connection -> inTransaction(connection, () -> {
+            try(Statement statement = connection.createStatement()) {
+                String stagingName = stagingTable.substring(0, stagingTable.indexOf('(')).trim();
+                statement.execute("DROP TABLE IF EXISTS pg_temp." + stagingName);
+                statement.execute("CREATE TEMP TABLE " + stagingTable + " ON COMMIT DROP");
+                CopyStreams.copyIn(connection, copySql, entities, fields);
+                return statement.executeUpdate(mergeSql);
+            }
+        }));
+    }
+
+    /**
+     * Runs the work in a transaction on the given connection. If a transaction is already active
+     * the work joins it; otherwise a transaction is started, committed after the work and
+     * rolled back if the work fails.
+     *
+     * @param connection the connection of the current operation
+     * @param work the work to run
+     * @param <R> the type of the result
+     * @return the result of the work
+     * @throws SQLException if the work fails
+     */
+
+    private static <R> R inTransaction(Connection connection, TransactionWork<R> work) throws SQLException {
+        boolean ownTransaction = connection.getAutoCommit();
+        if(ownTransaction) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            R result = work.run();
+            if(ownTransaction) {
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+            return result;
+        } catch(SQLException | RuntimeException e) {
+            if(ownTransaction) {
+                try {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                } catch(SQLException rollbackError) {
+                    LOGGER.log(Level.WARNING, "Rollback failed", rollbackError);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Work run inside a transaction.
+     *
+     * @param <R> the type of the result
+     */
+
+    @FunctionalInterface
+    private interface TransactionWork<R> {
+        R run() throws SQLException;
+    }
+
+    /**
+     * Deletes an entity from the database by its ID.
+     *
+     * @param id the ID of the entity to delete
+     */
+
+    public void delete(int id) {
         try {
-            connection.rollback();
+            withConnection(connection -> {
+                PreparedStatement statement = prepare(connection, sql.delete());
+                statement.setInt(1, id);
+                return statement.executeUpdate();
+            });
         } catch(SQLException e) {
-            LOGGER.log(Level.WARNING, "Rollback failed", e);
+            LOGGER.log(Level.WARNING, type.getName() + "DAO:delete " + e.getMessage());
         }
     }
 }
-
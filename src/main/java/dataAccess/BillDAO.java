@@ -1,24 +1,48 @@
 package dataAccess;
 
+import connection.ConnectionFactory;
 import dataModel.Bill;
+import dataModel.BillLine;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object for the {@link Bill} entity.
- * Provides methods to interact with the 'log' table in the database.
+ * Provides methods to interact with the 'log' table in the database,
+ * and with the 'log_line' table holding the lines of multi-line bills.
  */
 
 public class BillDAO {
-    private final Connection connection;
+    private static final String SELECT = "SELECT log.*, l.line_no, l.product_name AS line_product_name,"
+            + " l.quantity AS line_quantity, l.unit_price, l.total_price AS line_total_price"
+            + " FROM log LEFT JOIN log_line l ON l.log_id = log.id";
+
+    private final ConnectionScope scope;
+    private final int batchSize = ConnectionFactory.getIntProperty("db.batchSize", 500);
 
     /**
-     * Constructs a BillDAO with the given database connection.
+     * Constructs a BillDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public BillDAO() {
+        this(null);
+    }
+
+    /**
+     * Constructs a BillDAO that runs every operation on the given connection.
      *
-     * @param connection the database connection
+     * @param connection the database connection, or null to borrow pooled connections
      */
     public BillDAO(Connection connection) {
-        this.connection = connection;
+        this.scope = new ConnectionScope(connection);
     }
 
     /**
@@ -32,7 +56,8 @@ public class BillDAO {
 
     public Bill insert(Bill bill) throws SQLException {
         String sql = "INSERT INTO log (order_id, client_name, product_name, quantity, total_price, order_date) VALUES (?, ?, ?, ?, ?, ?) RETURNING ID";
-        try(PreparedStatement ps = connection.prepareStatement(sql)) {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(sql);
             ps.setInt(1, bill.orderId());
             ps.setString(2, bill.clientName());
             ps.setString(3, bill.productName());
@@ -52,12 +77,65 @@ public class BillDAO {
                     );
                 }
             }
+            throw new SQLException("Failed to insert bill");
+        });
+    }
+
+    /**
+     * Inserts the given {@link Bill} records using JDBC batches of {@code db.batchSize} rows.
+     * The rows are written in the current transaction if one is active.
+     *
+     * @param bills the bills to insert
+     * @return the inserted bills with their generated IDs, in the given order
+     * @throws SQLException if a database access error occurs
+     */
+
+    public List<Bill> insertAll(List<Bill> bills) throws SQLException {
+        List<Bill> inserted = new ArrayList<>(bills.size());
+        if(bills.isEmpty()) {
+            return inserted;
         }
-        throw new SQLException("Failed to insert bill");
+        String sql = "INSERT INTO log (order_id, client_name, product_name, quantity, total_price, order_date) VALUES (?, ?, ?, ?, ?, ?)";
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection)
+                    .prepare(sql, Statement.RETURN_GENERATED_KEYS);
+            ps.clearBatch();
+            for(int from = 0; from < bills.size(); from += batchSize) {
+                List<Bill> chunk = bills.subList(from, Math.min(from + batchSize, bills.size()));
+                for(Bill bill : chunk) {
+                    ps.setInt(1, bill.orderId());
+                    ps.setString(2, bill.clientName());
+                    ps.setString(3, bill.productName());
+                    ps.setInt(4, bill.quantity());
+                    ps.setBigDecimal(5, bill.totalPrice());
+                    ps.setTimestamp(6, Timestamp.valueOf(bill.orderDate()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try(ResultSet rs = ps.getGeneratedKeys()) {
+                    for(Bill bill : chunk) {
+                        if(!rs.next()) {
+                            throw new SQLException("Missing generated key for bill");
+                        }
+                        inserted.add(new Bill(
+                                rs.getInt("id"),
+                                bill.orderId(),
+                                bill.clientName(),
+                                bill.productName(),
+                                bill.quantity(),
+                                bill.totalPrice(),
+                                bill.orderDate()
+                        ));
+                    }
+                }
+            }
+            return inserted;
+        });
     }
 
     /**
      * Finds a {@link Bill} record in the database by the ID of the order for which the bill was generated.
+     * The lines of a multi-line bill are read in the same query.
      *
      * @param orderID the ID of the order on the bill
      * @return the bill generated for the given order
@@ -65,23 +143,130 @@ public class BillDAO {
      */
 
     public Bill findByOrderID(int orderID) throws SQLException {
-        String sql = "SELECT * FROM log WHERE order_id = ?";
-        try(PreparedStatement ps = connection.prepareStatement(sql)) {
+        String sql = SELECT + " WHERE log.order_id = ? ORDER BY log.id, l.line_no";
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(sql);
             ps.setInt(1, orderID);
             try(ResultSet rs = ps.executeQuery()) {
-                if(rs.next()) {
-                    return new Bill(
-                            rs.getInt("id"),
-                            rs.getInt("order_id"),
-                            rs.getString("client_name"),
-                            rs.getString("product_name"),
-                            rs.getInt("quantity"),
-                            rs.getBigDecimal("total_price"),
-                            rs.getTimestamp("order_date").toLocalDateTime()
-                    );
+                List<Bill> bills = readAll(rs);
+                return bills.isEmpty() ? null : bills.get(0);
+            }
+        });
+    }
+
+    /**
+     * Finds the {@link Bill} records of the given orders with a single {@code order_id = ANY(?)} query.
+     *
+     * @param orderIDs the IDs of the orders on the bills
+     * @return the bills keyed by the ID of their order; orders without a bill are missing from the map
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Map<Integer, Bill> findByOrderIDs(Collection<Integer> orderIDs) throws SQLException {
+        Map<Integer, Bill> bills = new HashMap<>();
+        if(orderIDs.isEmpty()) {
+            return bills;
+        }
+        String sql = SELECT + " WHERE log.order_id = ANY(?) ORDER BY log.id, l.line_no";
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(sql);
+            Array array = connection.createArrayOf("integer", orderIDs.toArray(new Integer[0]));
+            try {
+                ps.setArray(1, array);
+                try(ResultSet rs = ps.executeQuery()) {
+                    for(Bill bill : readAll(rs)) {
+                        bills.put(bill.orderId(), bill);
+                    }
                 }
+            } finally {
+                array.free();
             }
+            return bills;
+        });
+    }
+
+    /**
+     * Writes the {@link Bill} records issued in the given period to the output stream with {@code COPY ... TO STDOUT},
+     * sorted by ID. Rows go straight from the server to the stream, so memory use is constant.
+     *
+     * @param out the stream receiving the data
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param format the format of the exported data
+     * @return the number of bills exported
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if the data cannot be written
+     */
+
+    public long exportTo(OutputStream out, LocalDateTime from, LocalDateTime to, ExportFormat format)
+            throws SQLException, IOException {
+        List<String> conditions = new ArrayList<>();
+        if(from != null) {
+            conditions.add("order_date >= " + CopyStreams.timestampLiteral(from));
         }
-        return null;
+        if(to != null) {
+            conditions.add("order_date < " + CopyStreams.timestampLiteral(to));
+        }
+        String sql = "SELECT id, order_id, client_name, product_name, quantity, total_price, order_date FROM log"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) + " ORDER BY id";
+        return scope.copyOut(sql, format, out);
+    }
+
+    /**
+     * Creates the bills from all the rows of the ResultSet, which has one row per bill line
+     * sorted by bill ID, and one row with null line columns for a single-product bill.
+     *
+     * @param rs the ResultSet containing data
+     * @return a list of bills with their lines
+     * @throws SQLException if there is an error accessing the ResultSet
+     */
+
+    private static List<Bill> readAll(ResultSet rs) throws SQLException {
+        List<Bill> bills = new ArrayList<>();
+        Bill header = null;
+        List<BillLine> lines = new ArrayList<>();
+        while(rs.next()) {
+            if(header == null || header.id() != rs.getInt("id")) {
+                if(header != null) {
+                    bills.add(withLines(header, lines));
+                }
+                header = new Bill(
+                        rs.getInt("id"),
+                        rs.getInt("order_id"),
+                        rs.getString("client_name"),
+                        rs.getString("product_name"),
+                        rs.getInt("quantity"),
+                        rs.getBigDecimal("total_price"),
+                        rs.getTimestamp("order_date").toLocalDateTime()
+                );
+                lines = new ArrayList<>();
+            }
+            rs.getInt("line_no");
+            if(!rs.wasNull()) {
+                lines.add(new BillLine(
+                        rs.getString("line_product_name"),
+                        rs.getInt("line_quantity"),
+                        rs.getBigDecimal("unit_price"),
+                        rs.getBigDecimal("line_total_price")
+                ));
+            }
+        }
+        if(header != null) {
+            bills.add(withLines(header, lines));
+        }
+        return bills;
+    }
+
+    /**
+     * Copies the bill with the given lines.
+     *
+     * @param bill the bill header
+     * @param lines the lines of the bill
+     * @return the bill with the lines
+     */
+
+    private static Bill withLines(Bill bill, List<BillLine> lines) {
+        return new Bill(bill.id(), bill.orderId(), bill.clientName(), bill.productName(), bill.quantity(),
+                bill.totalPrice(), bill.orderDate(), lines);
     }
 }
@@ -3,6 +3,7 @@ package dataAccess;
 import dataModel.Client;
 
 import java.sql.*;
+import java.util.Iterator;
 
 /**
  * Data Access Object for {@link Client}.
@@ -13,7 +14,15 @@ import java.sql.*;
 public class ClientDAO extends AbstractDAO<Client> {
 
     /**
-     * Constructs a ClientDAO with a given database connection.
+     * Constructs a ClientDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public ClientDAO() {
+        super();
+    }
+
+    /**
+     * Constructs a ClientDAO that runs every operation on the given connection.
      *
      * @param connection the database connection
      */
@@ -21,4 +30,23 @@ public class ClientDAO extends AbstractDAO<Client> {
     public ClientDAO(Connection connection) {
         super(connection);
     }
+
+    /**
+     * Bulk loads clients with {@code COPY} and inserts them into the client table in file order.
+     * Clients have no natural key, so every loaded row becomes a new client.
+     *
+     * @param clients the validated clients to load, read lazily
+     * @return the number of clients inserted
+     * @throws SQLException if the load fails, in which case nothing is written
+     */
+
+    public int bulkImport(Iterator<Client> clients) throws SQLException {
+        return copyImport(
+                "client_staging (line_no bigint GENERATED ALWAYS AS IDENTITY, name varchar(100), address text, email varchar(255), age integer)",
+                "COPY client_staging (name, address, email, age) FROM STDIN WITH (FORMAT csv)",
+                clients,
+                c -> new Object[]{c.getName(), c.getAddress(), c.getEmail(), c.getAge()},
+                "INSERT INTO client (name, address, email, age) "
+                        + "SELECT name, address, email, age FROM client_staging ORDER BY line_no");
+    }
 }
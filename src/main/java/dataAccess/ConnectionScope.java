@@ -0,0 +1,114 @@
+package dataAccess;
+
+import connection.ConnectionFactory;
+import connection.TransactionManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+/**
+ * Supplies the connection a DAO operation runs on.
+ * A DAO constructed without a connection joins the transaction bound to the current thread by
+ * {@link TransactionManager}; outside a transaction it borrows a connection from the pool for every
+ * operation and returns it as soon as the operation ends. A DAO constructed with a connection runs
+ * every operation on it and never closes it.
+ */
+
+final class ConnectionScope {
+
+    /**
+     * Work performed with a connection.
+     *
+     * @param <R> the type of the result
+     */
+
+    @FunctionalInterface
+    interface SqlWork<R> {
+        R run(Connection connection) throws SQLException;
+    }
+
+    private final Connection bound;
+
+    /**
+     * Constructs a ConnectionScope.
+     *
+     * @param bound the connection to run every operation on, or null to borrow from the pool
+     */
+
+    ConnectionScope(Connection bound) {
+        this.bound = bound;
+    }
+
+    /**
+     * Runs the work on the bound connection, on the connection of the current transaction,
+     * or on a connection borrowed for the duration of the work.
+     *
+     * @param work the work to run
+     * @param <R> the type of the result
+     * @return the result of the work
+     * @throws SQLException if no connection is available or the work fails
+     */
+
+    <R> R call(SqlWork<R> work) throws SQLException {
+        Connection current = current();
+        if (current != null) {
+            return work.run(current);
+        }
+        try (Connection connection = ConnectionFactory.getConnection()) {
+            return work.run(connection);
+        }
+    }
+
+    /**
+     * Opens a cursor-backed stream. A borrowed connection is held until the stream is closed or fully consumed.
+     *
+     * @param sql the query
+     * @param binder sets the parameters of the query
+     * @param fetchSize the number of rows fetched per round trip
+     * @param readers creates the row reader of the ResultSet
+     * @param <R> the type of the mapped rows
+     * @return the lazy stream of rows
+     * @throws SQLException if no connection is available or the query cannot be executed
+     */
+
+    <R> Stream<R> stream(String sql, CursorStream.StatementBinder binder, int fetchSize,
+                         CursorStream.ReaderFactory<R> readers) throws SQLException {
+        Connection current = current();
+        Connection connection = current != null ? current : ConnectionFactory.getConnection();
+        return CursorStream.open(connection, current == null, sql, binder, fetchSize, readers);
+    }
+
+    /**
+     * Copies the rows of the query to the output stream with {@code COPY ... TO STDOUT}.
+     *
+     * @param query the query whose rows are copied
+     * @param format the format of the copied data
+     * @param out the stream receiving the data
+     * @return the number of rows copied
+     * @throws SQLException if no connection is available or the copy fails
+     * @throws IOException if the data cannot be written
+     */
+
+    long copyOut(String query, ExportFormat format, OutputStream out) throws SQLException, IOException {
+        Connection current = current();
+        if (current != null) {
+            return CopyStreams.copyOut(current, query, format, out);
+        }
+        try (Connection connection = ConnectionFactory.getConnection()) {
+            return CopyStreams.copyOut(connection, query, format, out);
+        }
+    }
+
+    /**
+     * Gets the connection operations run on without borrowing one.
+     *
+     * @return the bound connection, the connection of the current transaction, or null
+     */
+
+    private Connection current() {
+        return bound != null ? bound : TransactionManager.currentConnection();
+    }
+}
@@ -0,0 +1,126 @@
+package dataAccess;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * Streams data into and out of the server with {@code COPY} through the PostgreSQL CopyManager.
+ * Data goes through fixed-size buffers, so memory use does not depend on the number of rows.
+ */
+
+final class CopyStreams {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CopyStreams() {
+    }
+
+    /**
+     * Copies all the rows of the iterator into the server.
+     * Rows are encoded into a buffer that is flushed to the server when full.
+     *
+     * @param connection the connection to copy on
+     * @param copySql the {@code COPY ... FROM STDIN WITH (FORMAT csv)} statement
+     * @param rows the rows to copy, read lazily
+     * @param fields converts a row to its column values, in the order of the COPY column list
+     * @param <T> the type of the rows
+     * @return the number of rows copied
+     * @throws SQLException if the copy fails, in which case it is cancelled
+     */
+
+    static <T> long copyIn(Connection connection, String copySql, Iterator<T> rows,
+                           Function<T, Object[]> fields) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+        try {
+            StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+            while (rows.hasNext()) {
+                appendRow(buffer, fields.apply(rows.next()));
+                if (buffer.length() >= BUFFER_SIZE) {
+                    flush(copyIn, buffer);
+                }
+            }
+            flush(copyIn, buffer);
+            return copyIn.endCopy();
+        } catch (SQLException | RuntimeException e) {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the result of a query to the output stream with {@code COPY (query) TO STDOUT},
+     * without mapping the rows to Java objects.
+     *
+     * @param connection the connection to copy on
+     * @param query the query to export; it cannot have parameters
+     * @param format the format of the exported data
+     * @param out the stream receiving the data
+     * @return the number of rows exported
+     * @throws SQLException if the copy fails
+     * @throws IOException if the data cannot be written
+     */
+
+    static long copyOut(Connection connection, String query, ExportFormat format, OutputStream out)
+            throws SQLException, IOException {
+        return connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyOut("COPY (" + query + ") TO STDOUT WITH " + format.options(), out);
+    }
+
+    /**
+     * Renders a timestamp as a SQL literal, for queries that cannot use parameters such as {@code COPY}.
+     *
+     * @param dateTime the timestamp
+     * @return the quoted timestamp literal
+     */
+
+    static String timestampLiteral(LocalDateTime dateTime) {
+        return "'" + dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "'::timestamp";
+    }
+
+    /**
+     * Appends one CSV line, quoting every non-null value. Null values are written as empty unquoted fields.
+     *
+     * @param buffer the buffer to append to
+     * @param values the column values of the row
+     */
+
+    private static void appendRow(StringBuilder buffer, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            if (values[i] != null) {
+                buffer.append('"').append(values[i].toString().replace("\"", "\"\"")).append('"');
+            }
+        }
+        buffer.append('\n');
+    }
+
+    /**
+     * Sends the buffered rows to the server and empties the buffer.
+     *
+     * @param copyIn the active copy operation
+     * @param buffer the buffered rows
+     * @throws SQLException if the data cannot be sent
+     */
+
+    private static void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+}
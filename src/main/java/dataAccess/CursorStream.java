@@ -0,0 +1,188 @@
+package dataAccess;
+
+import connection.ConnectionFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily maps the rows of a query backed by a server-side cursor.
+ * The PostgreSQL driver only uses a cursor when auto-commit is off and a fetch size is set,
+ * so the query runs in its own read transaction unless the caller already started one.
+ * Only one batch of {@code fetchSize} rows is held in memory at a time.
+ * The cursor, statement, transaction and, if it was borrowed for the stream, the connection
+ * are released when the stream is closed or fully consumed.
+ *
+ * @param <R> the type of the mapped rows
+ */
+
+final class CursorStream<R> extends Spliterators.AbstractSpliterator<R> implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CursorStream.class.getName());
+
+    /**
+     * Sets the parameters of the query before it is executed.
+     */
+
+    @FunctionalInterface
+    interface StatementBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Maps the current row of a ResultSet.
+     *
+     * @param <R> the type of the mapped row
+     */
+
+    @FunctionalInterface
+    interface RowReader<R> {
+        R read(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Creates the row reader of a ResultSet, typically after resolving its column indexes.
+     *
+     * @param <R> the type of the mapped rows
+     */
+
+    @FunctionalInterface
+    interface ReaderFactory<R> {
+        RowReader<R> create(ResultSet resultSet) throws SQLException;
+    }
+
+    private final Connection connection;
+    private final boolean ownConnection;
+    private final boolean ownTransaction;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final RowReader<R> reader;
+    private boolean closed;
+
+    /**
+     * Constructs a CursorStream over an already executed query.
+     *
+     * @param connection the connection the query runs on
+     * @param ownConnection whether the connection is closed with the stream
+     * @param ownTransaction whether the read transaction was started for this stream
+     * @param statement the executed statement
+     * @param resultSet the cursor-backed ResultSet
+     * @param reader maps the rows of the ResultSet
+     */
+
+    private CursorStream(Connection connection, boolean ownConnection, boolean ownTransaction,
+                         PreparedStatement statement, ResultSet resultSet, RowReader<R> reader) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.connection = connection;
+        this.ownConnection = ownConnection;
+        this.ownTransaction = ownTransaction;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.reader = reader;
+    }
+
+    /**
+     * Executes the query with a server-side cursor and returns a lazy stream of its mapped rows.
+     * The stream must be closed, for example with try-with-resources, if it is not fully consumed.
+     *
+     * @param connection the connection to run the query on
+     * @param ownConnection whether the connection is closed with the stream, also if opening the stream fails
+     * @param sql the query
+     * @param binder sets the parameters of the query
+     * @param fetchSize the number of rows fetched from the cursor per round trip
+     * @param readers creates the row reader of the ResultSet
+     * @param <R> the type of the mapped rows
+     * @return the lazy stream of rows
+     * @throws SQLException if the query cannot be executed
+     */
+
+    static <R> Stream<R> open(Connection connection, boolean ownConnection, String sql, StatementBinder binder,
+                              int fetchSize, ReaderFactory<R> readers) throws SQLException {
+        boolean ownTransaction = false;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            ownTransaction = connection.getAutoCommit();
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            }
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            binder.bind(statement);
+            resultSet = statement.executeQuery();
+            CursorStream<R> cursor = new CursorStream<>(connection, ownConnection, ownTransaction, statement,
+                    resultSet, readers.create(resultSet));
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException | RuntimeException e) {
+            ConnectionFactory.close(resultSet);
+            ConnectionFactory.close(statement);
+            if (ownConnection) {
+                ConnectionFactory.close(connection);
+            } else if (ownTransaction) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the next row of the cursor, closing it once the last row was read.
+     *
+     * @param action the consumer of the mapped row
+     * @return {@code true} if a row was mapped
+     */
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (!resultSet.next()) {
+                close();
+                return false;
+            }
+            action.accept(reader.read(resultSet));
+            return true;
+        } catch (SQLException e) {
+            close();
+            throw new RuntimeException("Failed to read the next row", e);
+        }
+    }
+
+    /**
+     * Closes the cursor and its statement, ends the read transaction if this stream started it
+     * and returns the connection if it was borrowed for this stream.
+     */
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ConnectionFactory.close(resultSet);
+        ConnectionFactory.close(statement);
+        if (ownTransaction) {
+            try {
+                connection.commit();
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Failed to end the cursor transaction", e);
+            }
+        }
+        if (ownConnection) {
+            ConnectionFactory.close(connection);
+        }
+    }
+}
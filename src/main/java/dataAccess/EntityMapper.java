@@ -0,0 +1,234 @@
+package dataAccess;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maps the rows of a ResultSet to instances of an entity class and binds entities to insert and update statements.
+ * Entities annotated with {@link dataModel.Entity} get a typed mapper generated at compile time, named
+ * {@code dataAccess.<Entity>Mapper}; other entities use a {@link ReflectiveEntityMapper}.
+ * Mappers are created once per entity class and column indexes are resolved once per ResultSet.
+ *
+ * @param <T> the type of entity handled by this mapper
+ */
+
+abstract class EntityMapper<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityMapper.class.getName());
+    private static final Map<Class<?>, EntityMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+    static final String ID = "id";
+    static final String VERSION = "version";
+
+    private final String tableName;
+    private final String[] columns;
+    private final String[] valueColumns;
+    private final int versionIndex;
+
+    /**
+     * Constructs an EntityMapper for the given table and columns.
+     *
+     * @param tableName the name of the table that stores the entity
+     * @param columns the names of all the mapped columns, including the id, in the order of the entity fields
+     * @param valueColumns the names of the columns written by inserts and updates, in the order of the entity fields
+     */
+
+    EntityMapper(String tableName, String[] columns, String[] valueColumns) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.valueColumns = valueColumns;
+        this.versionIndex = Arrays.asList(valueColumns).indexOf(VERSION);
+    }
+
+    /**
+     * Returns the mapper of the given entity class, creating it on first use.
+     * The generated mapper is used when it is present, otherwise the reflective one.
+     *
+     * @param type the entity class
+     * @param <T> the entity type
+     * @return the cached mapper for the class
+     */
+
+    @SuppressWarnings("unchecked")
+    static <T> EntityMapper<T> of(Class<T> type) {
+        return (EntityMapper<T>) MAPPERS.computeIfAbsent(type, EntityMapper::create);
+    }
+
+    /**
+     * Loads the generated mapper of the entity class, falling back to reflection if there is none.
+     *
+     * @param type the entity class
+     * @return the new mapper
+     */
+
+    private static EntityMapper<?> create(Class<?> type) {
+        String generatedName = EntityMapper.class.getPackageName() + "." + type.getSimpleName() + "Mapper";
+        try {
+            Class<?> generated = Class.forName(generatedName, true, type.getClassLoader());
+            if (EntityMapper.class.isAssignableFrom(generated)) {
+                return (EntityMapper<?>) generated.getDeclaredConstructor().newInstance();
+            }
+        } catch (ClassNotFoundException e) {
+            // no generated mapper, use reflection
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.WARNING, "Failed to load " + generatedName + ", using reflection", e);
+        }
+        return new ReflectiveEntityMapper<>(type);
+    }
+
+    /**
+     * Converts camelCase field name to snake_case to match database column names.
+     *
+     * @param fieldName the camelCase field name to be converted
+     * @return the snake_case field name
+     */
+
+    static String toSnakeCase(String fieldName) {
+        return fieldName.replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase();
+    }
+
+    /**
+     * Gets the name of the table that stores the entity.
+     *
+     * @return the lower-case simple name of the entity class
+     */
+
+    String tableName() {
+        return tableName;
+    }
+
+    /**
+     * Gets the names of all the mapped columns, including the id.
+     *
+     * @return the column names, in the order of the entity fields
+     */
+
+    String[] columns() {
+        return columns.clone();
+    }
+
+    /**
+     * Gets the names of the columns written by inserts and updates, that is every column except the id.
+     *
+     * @return the value column names, in the order of the entity fields
+     */
+
+    String[] valueColumns() {
+        return valueColumns.clone();
+    }
+
+    /**
+     * Gets the position of the optimistic lock column among the value columns.
+     * An entity with an int {@code version} field is versioned: every update increments the version
+     * and only succeeds if the row still has the version the entity was read with.
+     *
+     * @return the index of the version column in {@link #valueColumns()}, or -1 if the entity is not versioned
+     */
+
+    int versionIndex() {
+        return versionIndex;
+    }
+
+    /**
+     * Creates an entity from the current row of the ResultSet. Null columns leave the field untouched.
+     *
+     * @param resultSet the ResultSet positioned on a row
+     * @param indexes the column indexes returned by {@link #resolveColumns(ResultSet)}
+     * @return the mapped entity
+     * @throws SQLException if a column cannot be read or a setter rejects its value
+     */
+
+    abstract T mapRow(ResultSet resultSet, int[] indexes) throws SQLException;
+
+    /**
+     * Binds the values of the entity to the first parameters of an insert or update statement,
+     * in the order of {@link #valueColumns()}.
+     *
+     * @param statement the statement to bind
+     * @param entity the entity providing the values
+     * @throws SQLException if a parameter cannot be set
+     */
+
+    abstract void bindValues(PreparedStatement statement, T entity) throws SQLException;
+
+    /**
+     * Reads the values of the entity that are written by inserts and updates.
+     *
+     * @param entity the entity providing the values
+     * @return the values, in the order of {@link #valueColumns()}, with primitives boxed
+     */
+
+    abstract Object[] values(T entity);
+
+    /**
+     * Sets the version of a versioned entity, after an update incremented it.
+     *
+     * @param entity the entity to update
+     * @param version the version to assign
+     * @throws UnsupportedOperationException if the entity is not versioned
+     */
+
+    abstract void setVersion(T entity, int version);
+
+    /**
+     * Sets the id of the entity, typically after it was generated by the database.
+     *
+     * @param entity the entity to update
+     * @param id the id to assign
+     */
+
+    abstract void setId(T entity, int id);
+
+    /**
+     * Resolves the index of every mapped column in the given ResultSet.
+     *
+     * @param resultSet the ResultSet to be mapped
+     * @return the column indexes, in the order of {@link #columns()}
+     * @throws SQLException if a column is missing from the ResultSet
+     */
+
+    int[] resolveColumns(ResultSet resultSet) throws SQLException {
+        int[] indexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indexes[i] = resultSet.findColumn(columns[i]);
+        }
+        return indexes;
+    }
+
+    /**
+     * Creates a row reader bound to the column indexes of the given ResultSet.
+     *
+     * @param resultSet the ResultSet to be mapped
+     * @return the row reader
+     * @throws SQLException if a column is missing from the ResultSet
+     */
+
+    CursorStream.RowReader<T> reader(ResultSet resultSet) throws SQLException {
+        int[] indexes = resolveColumns(resultSet);
+        return rs -> mapRow(rs, indexes);
+    }
+
+    /**
+     * Creates a list of entities from all the remaining rows of the ResultSet.
+     *
+     * @param resultSet the ResultSet containing data
+     * @return a list of entities
+     * @throws SQLException if there is an error accessing the ResultSet
+     */
+
+    List<T> mapAll(ResultSet resultSet) throws SQLException {
+        List<T> list = new ArrayList<>();
+        int[] indexes = resolveColumns(resultSet);
+        while (resultSet.next()) {
+            list.add(mapRow(resultSet, indexes));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,36 @@
+package dataAccess;
+
+/**
+ * The formats of the {@code COPY ... TO STDOUT} exports.
+ */
+
+public enum ExportFormat {
+
+    /**
+     * Comma-separated values with a header line.
+     */
+
+    CSV("(FORMAT csv, HEADER)"),
+
+    /**
+     * The PostgreSQL binary COPY format, which is faster to write and to load back with {@code COPY FROM}.
+     */
+
+    BINARY("(FORMAT binary)");
+
+    private final String options;
+
+    ExportFormat(String options) {
+        this.options = options;
+    }
+
+    /**
+     * Gets the option list of the COPY statement for this format.
+     *
+     * @return the COPY options
+     */
+
+    String options() {
+        return options;
+    }
+}
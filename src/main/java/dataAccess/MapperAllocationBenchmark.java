@@ -0,0 +1,214 @@
+package dataAccess;
+
+import connection.ConnectionFactory;
+import dataModel.Client;
+import dataModel.Order;
+import dataModel.Product;
+
+import com.sun.management.ThreadMXBean;
+import java.beans.PropertyDescriptor;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the allocation and time per mapped row of the original per-row reflection in
+ * {@code AbstractDAO.createObjects} with the precompiled reflective mapper and the generated typed mapper.
+ * The rows of the entity table are read once into a scrollable ResultSet and mapped again on every pass,
+ * so the numbers cover the mapping and the driver getters only, not the network.
+ * Allocation is measured with the allocated-bytes counter of the current thread.
+ *
+ * <p>Usage: {@code MapperAllocationBenchmark [client|product|order] [passes]}, for example
+ * {@code MapperAllocationBenchmark product 50}. Nothing is written to the database.</p>
+ */
+
+public final class MapperAllocationBenchmark {
+
+    private static final int WARMUP_PASSES = 5;
+
+    /**
+     * A way of mapping every remaining row of a ResultSet to entities.
+     *
+     * @param <T> the entity type
+     */
+
+    @FunctionalInterface
+    private interface RowMapping<T> {
+
+        /**
+         * Maps the remaining rows.
+         *
+         * @param resultSet the ResultSet to be mapped
+         * @return the entities
+         * @throws SQLException if the rows cannot be read or mapped
+         */
+
+        List<T> map(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+
+    private MapperAllocationBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the entity to map and the number of measured passes
+     * @throws SQLException if the rows cannot be read
+     */
+
+    public static void main(String[] args) throws SQLException {
+        String entity = args.length > 0 ? args[0] : "product";
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        try {
+            switch(entity) {
+                case "client" -> run(Client.class, passes);
+                case "order" -> run(Order.class, passes);
+                case "product" -> run(Product.class, passes);
+                default -> System.err.println("Usage: MapperAllocationBenchmark [client|product|order] [passes]");
+            }
+        } finally {
+            ConnectionFactory.shutdown();
+        }
+    }
+
+    /**
+     * Maps the table of an entity with every mapping and prints the bytes and nanoseconds per row.
+     *
+     * @param type the entity class
+     * @param passes the number of measured passes over the rows
+     * @param <T> the entity type
+     * @throws SQLException if the rows cannot be read
+     */
+
+    private static <T> void run(Class<T> type, int passes) throws SQLException {
+        EntityMapper<T> generated = EntityMapper.of(type);
+        ReflectiveEntityMapper<T> reflective = new ReflectiveEntityMapper<>(type);
+        String query = "SELECT * FROM \"" + generated.tableName() + "\"";
+        try(Connection connection = ConnectionFactory.getConnection();
+            Statement statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+                    ResultSet.CONCUR_READ_ONLY);
+            ResultSet resultSet = statement.executeQuery(query)) {
+            int rows = countRows(resultSet);
+            if(rows == 0) {
+                System.err.println("The " + generated.tableName() + " table is empty");
+                return;
+            }
+            System.out.printf("%s: %d rows, %d passes%n", type.getSimpleName(), rows, passes);
+            print("per-row reflection (before)", measure(resultSet, passes, rs -> mapPerRow(type, rs)), rows, passes);
+            print("precompiled reflection", measure(resultSet, passes, reflective::mapAll), rows, passes);
+            print("generated mapper", measure(resultSet, passes, generated::mapAll), rows, passes);
+        }
+    }
+
+    /**
+     * Maps the rows the given number of times after a warm-up.
+     *
+     * @param resultSet the scrollable ResultSet holding the rows
+     * @param passes the number of measured passes
+     * @param mapping the mapping to measure
+     * @param <T> the entity type
+     * @return the bytes allocated and the nanoseconds spent by the measured passes
+     * @throws SQLException if the rows cannot be read or mapped
+     */
+
+    private static <T> long[] measure(ResultSet resultSet, int passes, RowMapping<T> mapping) throws SQLException {
+        for(int i = 0; i < WARMUP_PASSES; i++) {
+            resultSet.beforeFirst();
+            mapping.map(resultSet);
+        }
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < passes; i++) {
+            resultSet.beforeFirst();
+            mapping.map(resultSet);
+        }
+        return new long[] {threads.getCurrentThreadAllocatedBytes() - bytes, System.nanoTime() - start};
+    }
+
+    /**
+     * Counts the rows of the ResultSet.
+     *
+     * @param resultSet the scrollable ResultSet
+     * @return the number of rows
+     * @throws SQLException if the ResultSet cannot be scrolled
+     */
+
+    private static int countRows(ResultSet resultSet) throws SQLException {
+        resultSet.last();
+        return resultSet.getRow();
+    }
+
+    /**
+     * Prints the bytes and nanoseconds per row of a mapping.
+     *
+     * @param name the name of the mapping
+     * @param measured the bytes and nanoseconds of all the passes
+     * @param rows the number of rows per pass
+     * @param passes the number of passes
+     */
+
+    private static void print(String name, long[] measured, int rows, int passes) {
+        double mapped = (double) rows * passes;
+        System.out.printf("  %-28s %10.1f bytes/row %10.1f ns/row%n", name, measured[0] / mapped, measured[1] / mapped);
+    }
+
+    /**
+     * Maps the rows the way {@code AbstractDAO.createObjects} did before the mappers were precompiled:
+     * the fields, column names and setters are looked up again for every row and every value is boxed.
+     *
+     * @param type the entity class
+     * @param resultSet the ResultSet to be mapped
+     * @param <T> the entity type
+     * @return the entities
+     * @throws SQLException if the rows cannot be read or mapped
+     */
+
+    private static <T> List<T> mapPerRow(Class<T> type, ResultSet resultSet) throws SQLException {
+        List<T> list = new ArrayList<>();
+        try {
+            Constructor<T> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            while(resultSet.next()) {
+                T instance = ctor.newInstance();
+                for(Field field : type.getDeclaredFields()) {
+                    if(Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    String fieldName = field.getName();
+                    Object value = resultSet.getObject(EntityMapper.toSnakeCase(fieldName));
+                    if(value != null) {
+                        if(field.getType() == double.class && value instanceof Number) {
+                            value = ((Number) value).doubleValue();
+                        } else if(field.getType() == int.class && value instanceof Number) {
+                            value = ((Number) value).intValue();
+                        } else if(field.getType() == LocalDateTime.class && value instanceof Timestamp) {
+                            value = ((Timestamp) value).toLocalDateTime();
+                        }
+                        PropertyDescriptor pd = new PropertyDescriptor(fieldName, type);
+                        pd.getWriteMethod().invoke(instance, value);
+                    }
+                }
+                list.add(instance);
+            }
+        } catch(SQLException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new SQLException("Reflection failed for " + type.getSimpleName(), e);
+        }
+        return list;
+    }
+}
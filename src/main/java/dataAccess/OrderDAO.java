@@ -1,19 +1,131 @@
 package dataAccess;
 
+import dataModel.BasketPlacement;
+import dataModel.Bill;
+import dataModel.BillLine;
 import dataModel.Order;
+import dataModel.OrderLine;
+import dataModel.OrderPlacement;
 
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Data Access Object for the {@link Order} entity.
- * Inherits basic CRUD operations from {@link AbstractDAO} and adds a custom query.
+ * Inherits basic CRUD operations from {@link AbstractDAO} and adds single-statement placement
+ * of single-product and multi-line orders.
  */
 
 public class OrderDAO extends AbstractDAO<Order> {
 
+    private static final String PLACE = """
+            WITH args AS (
+                SELECT ?::integer AS client_id, ?::integer AS product_id, ?::integer AS quantity,
+                       COALESCE(?::timestamp, LOCALTIMESTAMP) AS order_date
+            ), c AS (
+                SELECT client.id, client.name FROM client JOIN args ON client.id = args.client_id
+            ), p_row AS (
+                UPDATE product SET current_stock = product.current_stock - args.quantity
+                FROM args
+                WHERE product.id = args.product_id AND product.current_stock >= args.quantity
+                  AND EXISTS (SELECT 1 FROM c)
+                RETURNING product.id, product.product_name, product.price
+            ), picked AS (
+                SELECT s.product_id, s.shard FROM product_stock_shard s JOIN args ON s.product_id = args.product_id
+                WHERE s.stock >= args.quantity AND EXISTS (SELECT 1 FROM c) AND NOT EXISTS (SELECT 1 FROM p_row)
+                ORDER BY random() LIMIT 1 FOR UPDATE OF s SKIP LOCKED
+            ), p_shard AS (
+                UPDATE product_stock_shard s SET stock = s.stock - args.quantity
+                FROM args, picked
+                WHERE s.product_id = picked.product_id AND s.shard = picked.shard AND s.stock >= args.quantity
+                RETURNING s.product_id
+            ), p AS (
+                SELECT id, product_name, price FROM p_row
+                UNION ALL
+                SELECT product.id, product.product_name, product.price
+                FROM product JOIN p_shard ON product.id = p_shard.product_id
+            ), o AS (
+                INSERT INTO "order" (client_id, product_id, quantity, order_date)
+                SELECT c.id, p.id, args.quantity, args.order_date FROM args, c, p
+                RETURNING id, order_date
+            ), b AS (
+                INSERT INTO log (order_id, client_name, product_name, quantity, total_price, order_date)
+                SELECT o.id, c.name, p.product_name, args.quantity, p.price * args.quantity, o.order_date
+                FROM args, o, c, p
+                RETURNING id, order_id, client_name, product_name, quantity, total_price, order_date
+            )
+            SELECT b.id, b.order_id, b.client_name, b.product_name, b.quantity, b.total_price, b.order_date,
+                   EXISTS (SELECT 1 FROM c) AS client_found,
+                   (SELECT product.current_stock + COALESCE((SELECT sum(s.stock) FROM product_stock_shard s
+                                                             WHERE s.product_id = product.id), 0)
+                    FROM product JOIN args ON product.id = args.product_id) AS available
+            FROM args LEFT JOIN b ON true""";
+
+    private static final String PLACE_BASKET = """
+            WITH args AS (
+                SELECT ?::integer AS client_id, COALESCE(?::timestamp, LOCALTIMESTAMP) AS order_date
+            ), items AS (
+                SELECT * FROM unnest(?::integer[], ?::integer[]) WITH ORDINALITY AS t (product_id, quantity, line_no)
+            ), c AS (
+                SELECT client.id, client.name FROM client JOIN args ON client.id = args.client_id
+            ), locked AS (
+                SELECT product.id, product.product_name, product.price, product.current_stock FROM product
+                WHERE product.id IN (SELECT product_id FROM items)
+                ORDER BY product.id FOR NO KEY UPDATE
+            ), checked AS (
+                SELECT items.line_no, items.product_id, items.quantity,
+                       locked.product_name, locked.price, locked.current_stock
+                FROM items LEFT JOIN locked ON locked.id = items.product_id
+            ), ok AS (
+                SELECT EXISTS (SELECT 1 FROM c) AND NOT EXISTS (
+                    SELECT 1 FROM checked WHERE current_stock IS NULL OR current_stock < quantity
+                ) AS placeable
+            ), p AS (
+                UPDATE product SET current_stock = product.current_stock - checked.quantity
+                FROM checked, ok
+                WHERE ok.placeable AND product.id = checked.product_id
+                RETURNING product.id
+            ), o AS (
+                INSERT INTO "order" (client_id, quantity, order_date)
+                SELECT c.id, (SELECT sum(quantity) FROM items), args.order_date FROM args, c, ok
+                WHERE ok.placeable
+                RETURNING id, order_date
+            ), ol AS (
+                INSERT INTO order_line (order_id, line_no, product_id, quantity, unit_price)
+                SELECT o.id, checked.line_no, checked.product_id, checked.quantity, checked.price FROM o, checked
+            ), b AS (
+                INSERT INTO log (order_id, client_name, product_name, quantity, total_price, order_date)
+                SELECT o.id, c.name, left(string_agg(checked.product_name, ', ' ORDER BY checked.line_no), 100),
+                       sum(checked.quantity), sum(checked.price * checked.quantity), o.order_date
+                FROM o, c, checked
+                GROUP BY o.id, c.name, o.order_date
+                RETURNING id, order_id, client_name, product_name, quantity, total_price, order_date
+            ), bl AS (
+                INSERT INTO log_line (log_id, line_no, product_name, quantity, unit_price, total_price)
+                SELECT b.id, checked.line_no, checked.product_name, checked.quantity, checked.price,
+                       checked.price * checked.quantity
+                FROM b, checked
+            )
+            SELECT b.id, b.order_id, b.client_name, b.product_name, b.quantity, b.total_price, b.order_date,
+                   EXISTS (SELECT 1 FROM c) AS client_found,
+                   checked.product_id AS line_product_id, checked.product_name AS line_product_name,
+                   checked.quantity AS line_quantity, checked.price, checked.current_stock
+            FROM checked LEFT JOIN b ON true
+            ORDER BY checked.line_no""";
+
+    /**
+     * Constructs an OrderDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public OrderDAO() {
+        super();
+    }
+
     /**
-     * Constructs an OrderDAO with the given database connection.
+     * Constructs an OrderDAO that runs every operation on the given connection.
      *
      * @param connection the database connection
      */
@@ -21,4 +133,183 @@ public class OrderDAO extends AbstractDAO<Order> {
     public OrderDAO(Connection connection) {
         super(connection);
     }
+
+    /**
+     * Places an order in a single round trip. One statement with data-modifying CTEs decrements the stock
+     * only if enough is left, inserts the order and inserts its bill, priced from the product row.
+     * If the product row does not have enough stock, the quantity is taken instead from a random shard of the
+     * product that has enough and that no other transaction holds, so orders for a sharded product are placed
+     * in the same round trip without waiting on each other. The product row is then never locked.
+     * Nothing is written unless the client exists and the stock is sufficient.
+     * The generated ID and the order date are set on the given order.
+     * The stock reported with a rejection is the total of the product row and its shards, read again after the
+     * statement: the statement's own reading comes from its starting snapshot, while the conditional decrements
+     * check the latest committed rows, so under concurrency the snapshot could report more stock than they found.
+     * A rejection reporting enough stock means the stock is spread over several shards or they were all held.
+     *
+     * @param order the order to place
+     * @return the placement outcome with the saved order and its bill, or the reason the order was not placed
+     * @throws SQLException if a database access error occurs
+     */
+
+    public OrderPlacement place(Order order) throws SQLException {
+        return withConnection(connection -> {
+            PreparedStatement statement = prepare(connection, PLACE);
+            statement.setInt(1, order.getClientId());
+            statement.setInt(2, order.getProductId());
+            statement.setInt(3, order.getQuantity());
+            statement.setTimestamp(4, order.getOrderDate() == null ? null : Timestamp.valueOf(order.getOrderDate()));
+            try(ResultSet rs = statement.executeQuery()) {
+                if(!rs.next()) {
+                    throw new SQLException("Order placement returned no result");
+                }
+                int available = rs.getInt("available");
+                if(rs.wasNull()) {
+                    return new OrderPlacement(OrderPlacement.Status.UNKNOWN_PRODUCT, null, null, -1);
+                }
+                if(!rs.getBoolean("client_found")) {
+                    return new OrderPlacement(OrderPlacement.Status.UNKNOWN_CLIENT, null, null, available);
+                }
+                int billId = rs.getInt("id");
+                if(rs.wasNull()) {
+                    return new OrderPlacement(OrderPlacement.Status.UNDER_STOCK, null, null,
+                            totalStock(connection, order.getProductId()));
+                }
+                Bill bill = new Bill(
+                        billId,
+                        rs.getInt("order_id"),
+                        rs.getString("client_name"),
+                        rs.getString("product_name"),
+                        rs.getInt("quantity"),
+                        rs.getBigDecimal("total_price"),
+                        rs.getTimestamp("order_date").toLocalDateTime()
+                );
+                order.setId(bill.orderId());
+                order.setOrderDate(bill.orderDate());
+                return new OrderPlacement(OrderPlacement.Status.PLACED, order, bill, available);
+            }
+        });
+    }
+
+    /**
+     * Places a multi-line order in a single round trip, whatever the number of lines.
+     * One statement with data-modifying CTEs locks the ordered products in ascending ID order, so concurrent
+     * orders never deadlock, and only if the client exists and every line has enough stock it decrements
+     * the stock, inserts the order header, its lines, its bill and the lines of the bill.
+     * The lines must be for distinct products. Only the stock of the product rows is used, so the stock a
+     * sharded product needs must first be moved into its row with {@link ProductDAO#refillFromShards}.
+     *
+     * @param clientId the ID of the client placing the order
+     * @param lines the lines of the order, for distinct products
+     * @param orderDate the date of the order, or null for the current time
+     * @return the placement outcome with the saved order header and its multi-line bill,
+     *         or the reason the order was not placed
+     * @throws SQLException if a database access error occurs
+     */
+
+    public BasketPlacement placeBasket(int clientId, List<OrderLine> lines, LocalDateTime orderDate)
+            throws SQLException {
+        return withConnection(connection -> {
+            PreparedStatement statement = prepare(connection, PLACE_BASKET);
+            Array productIds = connection.createArrayOf("integer",
+                    lines.stream().map(OrderLine::productId).toArray(Integer[]::new));
+            Array quantities = connection.createArrayOf("integer",
+                    lines.stream().map(OrderLine::quantity).toArray(Integer[]::new));
+            try {
+                statement.setInt(1, clientId);
+                statement.setTimestamp(2, orderDate == null ? null : Timestamp.valueOf(orderDate));
+                statement.setArray(3, productIds);
+                statement.setArray(4, quantities);
+                try(ResultSet rs = statement.executeQuery()) {
+                    return readBasket(rs, clientId);
+                }
+            } finally {
+                productIds.free();
+                quantities.free();
+            }
+        });
+    }
+
+    /**
+     * Reads the latest committed total stock of a product, the stock of its row plus the stock of its shards.
+     *
+     * @param connection the connection the order was placed on
+     * @param productId the ID of the product
+     * @return the total stock of the product, or 0 if the product no longer exists
+     * @throws SQLException if a database access error occurs
+     */
+
+    private int totalStock(Connection connection, int productId) throws SQLException {
+        PreparedStatement statement = prepare(connection, "SELECT current_stock + COALESCE((SELECT sum(s.stock) "
+                + "FROM product_stock_shard s WHERE s.product_id = product.id), 0) FROM product WHERE id = ?");
+        statement.setInt(1, productId);
+        try(ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Reads the outcome of {@link #placeBasket} from its rows, one per order line.
+     *
+     * @param rs the result of the placement statement
+     * @param clientId the ID of the client placing the order
+     * @return the placement outcome
+     * @throws SQLException if there is an error accessing the ResultSet
+     */
+
+    private static BasketPlacement readBasket(ResultSet rs, int clientId) throws SQLException {
+        List<BillLine> billLines = new ArrayList<>();
+        BasketPlacement rejected = null;
+        Bill header = null;
+        boolean clientFound = true;
+        while(rs.next()) {
+            int productId = rs.getInt("line_product_id");
+            int quantity = rs.getInt("line_quantity");
+            int available = rs.getInt("current_stock");
+            if(rs.wasNull()) {
+                if(rejected == null || rejected.status() != OrderPlacement.Status.UNKNOWN_PRODUCT) {
+                    rejected = new BasketPlacement(OrderPlacement.Status.UNKNOWN_PRODUCT, null, null, productId, -1);
+                }
+                continue;
+            }
+            clientFound = rs.getBoolean("client_found");
+            if(available < quantity && rejected == null) {
+                rejected = new BasketPlacement(OrderPlacement.Status.UNDER_STOCK, null, null, productId, available);
+            }
+            int billId = rs.getInt("id");
+            if(rs.wasNull()) {
+                continue;
+            }
+            if(header == null) {
+                header = new Bill(
+                        billId,
+                        rs.getInt("order_id"),
+                        rs.getString("client_name"),
+                        rs.getString("product_name"),
+                        rs.getInt("quantity"),
+                        rs.getBigDecimal("total_price"),
+                        rs.getTimestamp("order_date").toLocalDateTime()
+                );
+            }
+            BigDecimal price = rs.getBigDecimal("price");
+            billLines.add(new BillLine(rs.getString("line_product_name"), quantity, price,
+                    price.multiply(BigDecimal.valueOf(quantity))));
+        }
+        if(rejected != null && rejected.status() == OrderPlacement.Status.UNKNOWN_PRODUCT) {
+            return rejected;
+        }
+        if(!clientFound) {
+            return new BasketPlacement(OrderPlacement.Status.UNKNOWN_CLIENT, null, null, -1, -1);
+        }
+        if(header == null) {
+            if(rejected == null) {
+                throw new SQLException("Order placement returned no result");
+            }
+            return rejected;
+        }
+        Order order = new Order(header.orderId(), clientId, 0, header.quantity(), header.orderDate());
+        Bill bill = new Bill(header.id(), header.orderId(), header.clientName(), header.productName(),
+                header.quantity(), header.totalPrice(), header.orderDate(), billLines);
+        return new BasketPlacement(OrderPlacement.Status.PLACED, order, bill, -1, -1);
+    }
 }
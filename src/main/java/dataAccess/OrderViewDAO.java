@@ -0,0 +1,271 @@
+package dataAccess;
+
+import connection.ConnectionFactory;
+import dataModel.OrderView;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Data Access Object for the {@link OrderView} read model.
+ * Builds order views directly from a single join of the 'order', 'client' and 'product' tables,
+ * instead of looking up the client and product of every order separately.
+ * The view of a multi-line order lists the products of its lines and their total quantity.
+ */
+
+public class OrderViewDAO {
+
+    private static final String SELECT = "SELECT o.id, c.name AS client_name,"
+            + " COALESCE(p.product_name, item_names.product_names) AS product_name, o.quantity, o.order_date"
+            + " FROM \"order\" o JOIN client c ON c.id = o.client_id LEFT JOIN product p ON p.id = o.product_id"
+            + " LEFT JOIN LATERAL (SELECT string_agg(lp.product_name, ', ' ORDER BY ol.line_no) AS product_names"
+            + " FROM order_line ol JOIN product lp ON lp.id = ol.product_id WHERE ol.order_id = o.id)"
+            + " item_names ON true";
+
+    private final ConnectionScope scope;
+    private final int fetchSize = ConnectionFactory.getIntProperty("db.fetchSize", 1000);
+
+    /**
+     * Constructs an OrderViewDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public OrderViewDAO() {
+        this(null);
+    }
+
+    /**
+     * Constructs an OrderViewDAO that runs every operation on the given connection.
+     *
+     * @param connection the database connection, or null to borrow pooled connections
+     */
+
+    public OrderViewDAO(Connection connection) {
+        this.scope = new ConnectionScope(connection);
+    }
+
+    /**
+     * Finds the views of all the orders, sorted by order ID.
+     *
+     * @return a list of all order views
+     * @throws SQLException if a database access error occurs
+     */
+
+    public List<OrderView> findAll() throws SQLException {
+        return find(null, null, null);
+    }
+
+    /**
+     * Finds the views of the orders matching the given filters, sorted by order ID.
+     *
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param clientId the ID of the client who placed the orders, or null for all clients
+     * @return a list of the matching order views
+     * @throws SQLException if a database access error occurs
+     */
+
+    public List<OrderView> find(LocalDateTime from, LocalDateTime to, Integer clientId) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection)
+                    .prepare(createQuery(from, to, clientId) + " ORDER BY o.id");
+            bindFilters(ps, from, to, clientId);
+            try(ResultSet rs = ps.executeQuery()) {
+                return readAll(rs);
+            }
+        });
+    }
+
+    /**
+     * Finds a page of order views sorted by order ID, starting after the given ID.
+     *
+     * @param afterId the ID of the last order of the previous page, or 0 for the first page
+     * @param limit the maximum number of orders in the page
+     * @return the order views of the page
+     * @throws SQLException if a database access error occurs
+     */
+
+    public List<OrderView> findPage(int afterId, int limit) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection)
+                    .prepare(SELECT + " WHERE o.id > ? ORDER BY o.id LIMIT ?");
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            try(ResultSet rs = ps.executeQuery()) {
+                return readAll(rs);
+            }
+        });
+    }
+
+    /**
+     * Finds the views of the orders with the given IDs with a single query.
+     *
+     * @param ids the IDs of the orders
+     * @return the order views keyed by order ID; IDs that do not exist are missing from the map
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Map<Integer, OrderView> findByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, OrderView> views = new HashMap<>();
+        if(ids.isEmpty()) {
+            return views;
+        }
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(SELECT + " WHERE o.id = ANY(?)");
+            Array array = connection.createArrayOf("integer", ids.toArray(new Integer[0]));
+            try {
+                ps.setArray(1, array);
+                try(ResultSet rs = ps.executeQuery()) {
+                    for(OrderView view : readAll(rs)) {
+                        views.put(view.getId(), view);
+                    }
+                }
+            } finally {
+                array.free();
+            }
+            return views;
+        });
+    }
+
+    /**
+     * Streams the views of the orders matching the given filters from a server-side cursor, sorted by order ID.
+     *
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param clientId the ID of the client who placed the orders, or null for all clients
+     * @return a lazy stream of the matching order views, which must be closed if not fully consumed
+     * @throws SQLException if the query cannot be executed
+     */
+
+    public Stream<OrderView> stream(LocalDateTime from, LocalDateTime to, Integer clientId) throws SQLException {
+        return scope.stream(createQuery(from, to, clientId) + " ORDER BY o.id",
+                ps -> bindFilters(ps, from, to, clientId), fetchSize, OrderViewDAO::reader);
+    }
+
+    /**
+     * Writes the views of the orders matching the given filters to the output stream with {@code COPY ... TO STDOUT},
+     * sorted by order ID. Rows go straight from the server to the stream, so memory use is constant.
+     *
+     * @param out the stream receiving the data
+     * @param from the earliest order date, or null for no lower bound
+     * @param to the latest order date (exclusive), or null for no upper bound
+     * @param clientId the ID of the client who placed the orders, or null for all clients
+     * @param format the format of the exported data
+     * @return the number of orders exported
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if the data cannot be written
+     */
+
+    public long exportTo(OutputStream out, LocalDateTime from, LocalDateTime to, Integer clientId, ExportFormat format)
+            throws SQLException, IOException {
+        List<String> conditions = new ArrayList<>();
+        if(from != null) {
+            conditions.add("o.order_date >= " + CopyStreams.timestampLiteral(from));
+        }
+        if(to != null) {
+            conditions.add("o.order_date < " + CopyStreams.timestampLiteral(to));
+        }
+        if(clientId != null) {
+            conditions.add("o.client_id = " + clientId.intValue());
+        }
+        String query = conditions.isEmpty() ? SELECT : SELECT + " WHERE " + String.join(" AND ", conditions);
+        return scope.copyOut(query + " ORDER BY o.id", format, out);
+    }
+
+    /**
+     * Creates the join query with a condition for every given filter.
+     *
+     * @param from the earliest order date, or null
+     * @param to the latest order date, or null
+     * @param clientId the client ID, or null
+     * @return the query without ordering
+     */
+
+    private static String createQuery(LocalDateTime from, LocalDateTime to, Integer clientId) {
+        List<String> conditions = new ArrayList<>();
+        if(from != null) {
+            conditions.add("o.order_date >= ?");
+        }
+        if(to != null) {
+            conditions.add("o.order_date < ?");
+        }
+        if(clientId != null) {
+            conditions.add("o.client_id = ?");
+        }
+        return conditions.isEmpty() ? SELECT : SELECT + " WHERE " + String.join(" AND ", conditions);
+    }
+
+    /**
+     * Sets the parameters of the filters created by {@link #createQuery}.
+     *
+     * @param ps the statement to bind
+     * @param from the earliest order date, or null
+     * @param to the latest order date, or null
+     * @param clientId the client ID, or null
+     * @throws SQLException if a parameter cannot be set
+     */
+
+    private static void bindFilters(PreparedStatement ps, LocalDateTime from, LocalDateTime to, Integer clientId)
+            throws SQLException {
+        int index = 1;
+        if(from != null) {
+            ps.setTimestamp(index++, Timestamp.valueOf(from));
+        }
+        if(to != null) {
+            ps.setTimestamp(index++, Timestamp.valueOf(to));
+        }
+        if(clientId != null) {
+            ps.setInt(index, clientId);
+        }
+    }
+
+    /**
+     * Creates a list of order views from all the rows of the ResultSet.
+     *
+     * @param rs the ResultSet containing data
+     * @return a list of order views
+     * @throws SQLException if there is an error accessing the ResultSet
+     */
+
+    private static List<OrderView> readAll(ResultSet rs) throws SQLException {
+        List<OrderView> views = new ArrayList<>();
+        CursorStream.RowReader<OrderView> reader = reader(rs);
+        while(rs.next()) {
+            views.add(reader.read(rs));
+        }
+        return views;
+    }
+
+    /**
+     * Creates a reader of order views bound to the column indexes of the given ResultSet.
+     *
+     * @param rs the ResultSet to be read
+     * @return the row reader
+     * @throws SQLException if a column is missing from the ResultSet
+     */
+
+    private static CursorStream.RowReader<OrderView> reader(ResultSet rs) throws SQLException {
+        int id = rs.findColumn("id");
+        int clientName = rs.findColumn("client_name");
+        int productName = rs.findColumn("product_name");
+        int quantity = rs.findColumn("quantity");
+        int orderDate = rs.findColumn("order_date");
+        return row -> {
+            Timestamp date = row.getTimestamp(orderDate);
+            return new OrderView(
+                    row.getInt(id),
+                    row.getString(clientName),
+                    row.getString(productName),
+                    row.getInt(quantity),
+                    date == null ? null : date.toLocalDateTime()
+            );
+        };
+    }
+}
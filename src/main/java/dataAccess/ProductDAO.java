@@ -3,16 +3,45 @@ package dataAccess;
 import dataModel.Product;
 
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 /**
  * Data Access Object for the {@link Product} entity.
  * Extends {@link AbstractDAO} and provides additional methods for stock validation and modification.
+ * The stock of a hot product can be sharded: it is then split across rows of the 'product_stock_shard' table,
+ * so concurrent decrements lock different rows instead of queuing on the product row.
+ * The stock of a product is always the stock of its row plus the stock of its shards.
  */
 
 public class ProductDAO extends AbstractDAO<Product> {
 
     /**
-     * Constructs a ProductDAO with the given database connection.
+     * Receives the total stock of a product.
+     */
+
+    @FunctionalInterface
+    public interface StockConsumer {
+        void accept(int productId, int stock);
+    }
+
+    private static final String TOTAL_STOCK = "(current_stock + COALESCE("
+            + "(SELECT sum(s.stock) FROM product_stock_shard s WHERE s.product_id = product.id), 0))";
+
+    /**
+     * Constructs a ProductDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public ProductDAO() {
+        super();
+    }
+
+    /**
+     * Constructs a ProductDAO that runs every operation on the given connection.
      *
      * @param connection the connection to the database
      */
@@ -22,7 +51,7 @@ public class ProductDAO extends AbstractDAO<Product> {
     }
 
     /**
-     * Checks if there is sufficient stock available for a given product.
+     * Checks if there is sufficient stock available for a given product, including the stock of its shards.
      *
      * @param productId the ID of the given product
      * @param quantity the desired quantity to check for
@@ -31,18 +60,20 @@ public class ProductDAO extends AbstractDAO<Product> {
      */
 
     public boolean checkStock(int productId, int quantity) throws SQLException {
-        String query = "SELECT current_stock >= ? FROM product WHERE id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        String query = "SELECT " + TOTAL_STOCK + " >= ? FROM product WHERE id = ?";
+        return withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
             stmt.setInt(1, quantity);
             stmt.setInt(2, productId);
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next() && rs.getBoolean(1);
             }
-        }
+        });
     }
 
     /**
-     * Decrements the stock for a given product by the desired quantity.
+     * Decrements the stock for a given product by the desired quantity, taking it from the shards
+     * if the product row does not have enough.
      *
      * @param productId the ID of the product
      * @param quantity the amount to decrement
@@ -50,15 +81,397 @@ public class ProductDAO extends AbstractDAO<Product> {
      */
 
     public void decrementStock(int productId, int quantity) throws SQLException {
+        if (!tryDecrementStock(productId, quantity)) {
+            throw new SQLException("Under-stock or invalid product ID");
+        }
+    }
+
+    /**
+     * Atomically reserves stock for a given product by decrementing it only if enough stock is left.
+     * The condition is checked by the update itself, under the row lock, so concurrent reservations
+     * can never take the stock below zero. If the product row does not have enough stock, the stock is taken
+     * from the shards of the product.
+     *
+     * @param productId the ID of the product
+     * @param quantity the amount to decrement
+     * @return {@code true} if the stock was decremented,
+     *         {@code false} if it is insufficient or the product does not exist
+     * @throws SQLException if a database access error occurs
+     */
+
+    public boolean tryDecrementStock(int productId, int quantity) throws SQLException {
         String query = "UPDATE product SET current_stock = current_stock - ? WHERE id = ? AND current_stock >= ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        boolean decremented = withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            stmt.setInt(1, quantity);
+            stmt.setInt(2, productId);
+            stmt.setInt(3, quantity);
+            return stmt.executeUpdate() > 0;
+        });
+        return decremented || tryDecrementShards(productId, quantity);
+    }
+
+    /**
+     * Atomically decrements the sharded stock of a product.
+     * A random shard with enough stock that no other transaction holds is tried first, so concurrent
+     * decrements spread over the shards without waiting. If there is none, the shards are locked in
+     * ascending order and the quantity is drained from them in that order, if their total is enough.
+     * The row of the product itself is never locked.
+     *
+     * @param productId the ID of the product
+     * @param quantity the amount to decrement
+     * @return {@code true} if the stock was decremented,
+     *         {@code false} if the shards do not have enough stock or the product is not sharded
+     * @throws SQLException if a database access error occurs
+     */
+
+    public boolean tryDecrementShards(int productId, int quantity) throws SQLException {
+        String pick = "UPDATE product_stock_shard s SET stock = s.stock - ? FROM ("
+                + "SELECT shard FROM product_stock_shard WHERE product_id = ? AND stock >= ? "
+                + "ORDER BY random() LIMIT 1 FOR UPDATE SKIP LOCKED) picked "
+                + "WHERE s.product_id = ? AND s.shard = picked.shard";
+        String drain = """
+                WITH locked AS (
+                    SELECT shard, stock FROM product_stock_shard WHERE product_id = ? ORDER BY shard FOR UPDATE
+                ), taken AS (
+                    SELECT shard, LEAST(stock, ? - (sum(stock) OVER (ORDER BY shard) - stock)) AS amount FROM locked
+                    WHERE (SELECT sum(stock) FROM locked) >= ?
+                )
+                UPDATE product_stock_shard s SET stock = s.stock - taken.amount
+                FROM taken
+                WHERE s.product_id = ? AND s.shard = taken.shard AND taken.amount > 0""";
+        return withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, pick);
             stmt.setInt(1, quantity);
             stmt.setInt(2, productId);
             stmt.setInt(3, quantity);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new SQLException("Under-stock or invalid product ID");
+            stmt.setInt(4, productId);
+            if (stmt.executeUpdate() > 0) {
+                return true;
             }
+            stmt = prepare(connection, drain);
+            stmt.setInt(1, productId);
+            stmt.setInt(2, quantity);
+            stmt.setInt(3, quantity);
+            stmt.setInt(4, productId);
+            return stmt.executeUpdate() > 0;
+        });
+    }
+
+    /**
+     * Splits the stock of a product across the given number of shards, moving the stock of the product row
+     * into them as evenly as possible. A product that is already sharded keeps the stock of its shards,
+     * and shards beyond the given number are kept until the product is unsharded.
+     *
+     * @param productId the ID of the product
+     * @param shards the number of shards
+     * @throws SQLException if the product does not exist or a database access error occurs
+     */
+
+    public void shardStock(int productId, int shards) throws SQLException {
+        String query = """
+                WITH moved AS (
+                    UPDATE product SET current_stock = 0
+                    FROM (SELECT id, current_stock FROM product WHERE id = ? FOR NO KEY UPDATE) old
+                    WHERE product.id = old.id
+                    RETURNING old.id, old.current_stock
+                )
+                INSERT INTO product_stock_shard (product_id, shard, stock)
+                SELECT moved.id, g, moved.current_stock / ? + CASE WHEN g < moved.current_stock % ? THEN 1 ELSE 0 END
+                FROM moved, generate_series(0, ? - 1) AS g
+                ON CONFLICT (product_id, shard) DO UPDATE SET stock = product_stock_shard.stock + EXCLUDED.stock""";
+        int inserted = withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            stmt.setInt(1, productId);
+            stmt.setInt(2, shards);
+            stmt.setInt(3, shards);
+            stmt.setInt(4, shards);
+            return stmt.executeUpdate();
+        });
+        if (inserted == 0) {
+            throw new SQLException("Invalid product ID");
         }
     }
+
+    /**
+     * Moves the stock of all the shards of a product back into the product row and removes the shards.
+     *
+     * @param productId the ID of the product
+     * @throws SQLException if a database access error occurs
+     */
+
+    public void unshardStock(int productId) throws SQLException {
+        String query = """
+                WITH removed AS (
+                    DELETE FROM product_stock_shard WHERE product_id = ? RETURNING stock
+                )
+                UPDATE product SET current_stock = current_stock + (SELECT COALESCE(sum(stock), 0) FROM removed)
+                WHERE id = ?""";
+        withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            stmt.setInt(1, productId);
+            stmt.setInt(2, productId);
+            return stmt.executeUpdate();
+        });
+    }
+
+    /**
+     * Gets the stock of a product: the stock of its row plus the stock of its shards.
+     *
+     * @param productId the ID of the product
+     * @return the total stock, or -1 if the product does not exist
+     * @throws SQLException if a database access error occurs
+     */
+
+    public int findTotalStock(int productId) throws SQLException {
+        String query = "SELECT " + TOTAL_STOCK + " FROM product WHERE id = ?";
+        return withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            stmt.setInt(1, productId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        });
+    }
+
+    /**
+     * Gets the total stock of several products, or of every product, with a single query,
+     * handing each product to the consumer without boxing.
+     *
+     * @param ids the IDs of the products, or null for every product
+     * @param consumer receives the ID and the total stock of every found product
+     * @throws SQLException if a database access error occurs
+     */
+
+    public void findTotalStocks(int[] ids, StockConsumer consumer) throws SQLException {
+        String query = "SELECT id, " + TOTAL_STOCK + " FROM product" + (ids == null ? "" : " WHERE id = ANY(?)");
+        withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            Array array = null;
+            if (ids != null) {
+                array = connection.createArrayOf("integer", Arrays.stream(ids).boxed().toArray());
+                stmt.setArray(1, array);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getInt(1), rs.getInt(2));
+                }
+            } finally {
+                if (array != null) {
+                    array.free();
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Gets the total stock of several products with a single query, without reading their other columns:
+     * the stock of their rows plus the stock of their shards.
+     *
+     * @param ids the IDs of the products
+     * @return the total stock keyed by product ID; IDs that do not exist are missing from the map
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Map<Integer, Integer> findStocks(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Integer> stocks = new HashMap<>();
+        if (ids.isEmpty()) {
+            return stocks;
+        }
+        String query = "SELECT id, " + TOTAL_STOCK + " FROM product WHERE id = ANY(?)";
+        return withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            Array array = connection.createArrayOf("integer", new LinkedHashSet<>(ids).toArray(new Integer[0]));
+            try {
+                stmt.setArray(1, array);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        stocks.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            } finally {
+                array.free();
+            }
+            return stocks;
+        });
+    }
+
+    /**
+     * Gets the number of shards of each sharded product.
+     *
+     * @return the number of shards keyed by product ID; products that are not sharded are missing from the map
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Map<Integer, Integer> findShardCounts() throws SQLException {
+        String query = "SELECT product_id, count(*) FROM product_stock_shard GROUP BY product_id";
+        return withConnection(connection -> {
+            Map<Integer, Integer> counts = new HashMap<>();
+            PreparedStatement stmt = prepare(connection, query);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Finds the given products and locks their rows until the end of the current transaction.
+     * The rows are locked in ascending ID order, so concurrent batches cannot deadlock on each other.
+     * The lock is {@code FOR NO KEY UPDATE}, which is all a stock update needs: unlike {@code FOR UPDATE}, it does not
+     * block the {@code KEY SHARE} lock that inserting an order referencing the product takes, so it cannot deadlock
+     * with the paths that lock a shard first and insert the order after.
+     *
+     * @param ids the IDs of the products to lock
+     * @return the locked products keyed by ID; IDs that do not exist are missing from the map
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Map<Integer, Product> lockByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Product> products = new HashMap<>();
+        if (ids.isEmpty()) {
+            return products;
+        }
+        String query = "SELECT * FROM product WHERE id = ANY(?) ORDER BY id FOR NO KEY UPDATE";
+        return withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            Array array = connection.createArrayOf("integer", new LinkedHashSet<>(ids).toArray(new Integer[0]));
+            try {
+                stmt.setArray(1, array);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    for (Product product : createObjects(rs)) {
+                        products.put(product.getId(), product);
+                    }
+                }
+            } finally {
+                array.free();
+            }
+            return products;
+        });
+    }
+
+    /**
+     * Locks the stock shards of the given products until the end of the current transaction and sums their stock.
+     * The shards are locked in ascending product and shard order; callers lock the product rows with
+     * {@link #lockByIds} first. Other paths lock a shard without locking the product row, such as
+     * {@link #tryDecrementShards}, and the order they insert then takes a {@code KEY SHARE} lock on the product row;
+     * that lock does not conflict with the {@code FOR NO KEY UPDATE} lock of {@link #lockByIds}, so the two orders
+     * cannot deadlock.
+     *
+     * @param ids the IDs of the products
+     * @return the total stock of the shards keyed by product ID; products that are not sharded are missing from the map
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Map<Integer, Integer> lockShardStocks(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Integer> stocks = new HashMap<>();
+        if (ids.isEmpty()) {
+            return stocks;
+        }
+        String query = "SELECT product_id, sum(stock) FROM (SELECT product_id, stock FROM product_stock_shard "
+                + "WHERE product_id = ANY(?) ORDER BY product_id, shard FOR UPDATE) locked GROUP BY product_id";
+        return withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            Array array = connection.createArrayOf("integer", new LinkedHashSet<>(ids).toArray(new Integer[0]));
+            try {
+                stmt.setArray(1, array);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        stocks.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            } finally {
+                array.free();
+            }
+            return stocks;
+        });
+    }
+
+    /**
+     * Moves stock from the shards of a product into its row, so that statements decrementing only the row,
+     * such as {@link #decrementStocks} and the order placement statements, can take it.
+     * Must run in the transaction that then decrements the moved stock from the row, so the row of a sharded
+     * product is back to 0 when the transaction commits.
+     *
+     * @param productId the ID of the product
+     * @param quantity the amount to move
+     * @return {@code true} if the stock was moved,
+     *         {@code false} if the shards do not have enough stock or the product is not sharded
+     * @throws SQLException if a database access error occurs
+     */
+
+    public boolean refillFromShards(int productId, int quantity) throws SQLException {
+        if (!tryDecrementShards(productId, quantity)) {
+            return false;
+        }
+        String query = "UPDATE product SET current_stock = current_stock + ? WHERE id = ?";
+        withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            stmt.setInt(1, quantity);
+            stmt.setInt(2, productId);
+            return stmt.executeUpdate();
+        });
+        return true;
+    }
+
+    /**
+     * Decrements the stock of several products with a single statement, one aggregated quantity per product.
+     * The products should be locked with {@link #lockByIds} in the same transaction.
+     * Only the product rows are decremented; stock needed from the shards is moved into the rows first
+     * with {@link #refillFromShards}.
+     *
+     * @param quantities the quantity to decrement, keyed by product ID
+     * @throws SQLException if a product does not exist or has less stock than its quantity
+     */
+
+    public void decrementStocks(Map<Integer, Integer> quantities) throws SQLException {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        String query = "UPDATE product SET current_stock = product.current_stock - t.quantity "
+                + "FROM unnest(?::integer[], ?::integer[]) AS t (id, quantity) "
+                + "WHERE product.id = t.id AND product.current_stock >= t.quantity";
+        int updated = withConnection(connection -> {
+            PreparedStatement stmt = prepare(connection, query);
+            Array ids = connection.createArrayOf("integer", quantities.keySet().toArray(new Integer[0]));
+            Array amounts = connection.createArrayOf("integer", quantities.values().toArray(new Integer[0]));
+            try {
+                stmt.setArray(1, ids);
+                stmt.setArray(2, amounts);
+                return stmt.executeUpdate();
+            } finally {
+                ids.free();
+                amounts.free();
+            }
+        });
+        if (updated != quantities.size()) {
+            throw new SQLException("Under-stock or invalid product ID");
+        }
+    }
+
+    /**
+     * Bulk loads products with {@code COPY} and merges them into the product table.
+     * Products with the name of an existing product update its price and stock instead of being inserted.
+     * If the same name appears several times, the last occurrence wins.
+     *
+     * @param products the validated products to load, read lazily
+     * @return the number of products inserted or updated
+     * @throws SQLException if the load fails, in which case nothing is written
+     */
+
+    public int bulkImport(Iterator<Product> products) throws SQLException {
+        return copyImport(
+                "product_staging (line_no bigint GENERATED ALWAYS AS IDENTITY, product_name varchar(100), price numeric(10, 2), current_stock integer)",
+                "COPY product_staging (product_name, price, current_stock) FROM STDIN WITH (FORMAT csv)",
+                products,
+                p -> new Object[]{p.getProductName(), p.getPrice(), p.getCurrentStock()},
+                "INSERT INTO product (product_name, price, current_stock) "
+                        + "SELECT DISTINCT ON (product_name) product_name, price, current_stock FROM product_staging "
+                        + "ORDER BY product_name, line_no DESC "
+                        + "ON CONFLICT (product_name) DO UPDATE SET price = EXCLUDED.price, current_stock = EXCLUDED.current_stock, "
+                        + "version = product.version + 1");
+    }
 }
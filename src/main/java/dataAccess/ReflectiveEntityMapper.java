@@ -0,0 +1,296 @@
+package dataAccess;
+
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entity mapper built at runtime with reflection, used for entities without a generated mapper.
+ * The reflective lookups (constructor, getters, setters, column names) are done once per entity class,
+ * so mapping a row only reads the columns and calls the cached method handles.
+ *
+ * @param <T> the type of entity handled by this mapper
+ */
+
+final class ReflectiveEntityMapper<T> extends EntityMapper<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final ColumnSetter[] setters;
+    private final MethodHandle[] getters;
+    private final MethodHandle idSetter;
+    private final MethodHandle versionSetter;
+
+    /**
+     * Reads one column of the current row and writes it into the entity.
+     */
+
+    @FunctionalInterface
+    private interface ColumnSetter {
+        void set(Object target, ResultSet resultSet, int column) throws Throwable;
+    }
+
+    /**
+     * Compiles a mapper for the given entity class.
+     *
+     * @param type the entity class
+     * @throws IllegalArgumentException if the class has no default constructor or a field has no setter
+     */
+
+    ReflectiveEntityMapper(Class<T> type) {
+        this(type, new Properties(type));
+    }
+
+    /**
+     * Constructs the mapper from the properties resolved for the entity class.
+     *
+     * @param type the entity class
+     * @param properties the resolved properties
+     */
+
+    private ReflectiveEntityMapper(Class<T> type, Properties properties) {
+        super(type.getSimpleName().toLowerCase(), properties.columns, properties.valueColumns);
+        this.type = type;
+        this.constructor = properties.constructor;
+        this.setters = properties.setters;
+        this.getters = properties.getters;
+        this.idSetter = properties.idSetter;
+        this.versionSetter = properties.versionSetter;
+    }
+
+    /**
+     * The constructor, accessors and column names of an entity class, resolved with reflection.
+     */
+
+    private static final class Properties {
+        private final MethodHandle constructor;
+        private final String[] columns;
+        private final ColumnSetter[] setters;
+        private final String[] valueColumns;
+        private final MethodHandle[] getters;
+        private final MethodHandle idSetter;
+        private final MethodHandle versionSetter;
+
+        /**
+         * Resolves the properties of the given entity class.
+         *
+         * @param type the entity class
+         * @throws IllegalArgumentException if the class has no default constructor, no id or a field has no accessors
+         */
+
+        private Properties(Class<?> type) {
+            try {
+                this.constructor = LOOKUP.unreflectConstructor(type.getDeclaredConstructor())
+                        .asType(MethodType.methodType(Object.class));
+                List<String> columnList = new ArrayList<>();
+                List<ColumnSetter> setterList = new ArrayList<>();
+                List<String> valueColumnList = new ArrayList<>();
+                List<MethodHandle> getterList = new ArrayList<>();
+                MethodHandle idWriter = null;
+                MethodHandle versionWriter = null;
+                for (Field field : type.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    PropertyDescriptor descriptor = new PropertyDescriptor(field.getName(), type);
+                    MethodHandle writeMethod = LOOKUP.unreflect(descriptor.getWriteMethod());
+                    String column = toSnakeCase(field.getName());
+                    columnList.add(column);
+                    setterList.add(createSetter(field.getType(), writeMethod));
+                    if (field.getName().equals(ID)) {
+                        idWriter = writeMethod.asType(MethodType.methodType(void.class, Object.class, int.class));
+                    } else {
+                        if (field.getName().equals(VERSION)) {
+                            if (field.getType() != int.class) {
+                                throw new IllegalArgumentException(type.getSimpleName() + ".version must be an int");
+                            }
+                            versionWriter = writeMethod.asType(
+                                    MethodType.methodType(void.class, Object.class, int.class));
+                        }
+                        valueColumnList.add(column);
+                        getterList.add(LOOKUP.unreflect(descriptor.getReadMethod())
+                                .asType(MethodType.methodType(Object.class, Object.class)));
+                    }
+                }
+                if (idWriter == null) {
+                    throw new IllegalArgumentException(type.getSimpleName() + " has no id field");
+                }
+                this.columns = columnList.toArray(new String[0]);
+                this.setters = setterList.toArray(new ColumnSetter[0]);
+                this.valueColumns = valueColumnList.toArray(new String[0]);
+                this.getters = getterList.toArray(new MethodHandle[0]);
+                this.idSetter = idWriter;
+                this.versionSetter = versionWriter;
+            } catch (NoSuchMethodException | IllegalAccessException | IntrospectionException e) {
+                throw new IllegalArgumentException("Cannot create mapper for " + type.getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Binds the values read through the cached getters with {@link PreparedStatement#setObject(int, Object)}.
+     *
+     * @param statement the statement to bind
+     * @param entity the entity providing the values
+     * @throws SQLException if a parameter cannot be set
+     */
+
+    @Override
+    void bindValues(PreparedStatement statement, T entity) throws SQLException {
+        for (int i = 0; i < getters.length; i++) {
+            Object value;
+            try {
+                value = getters[i].invokeExact((Object) entity);
+            } catch (Throwable e) {
+                throw new RuntimeException("Failed to read fields of " + type.getSimpleName(), e);
+            }
+            statement.setObject(i + 1, value);
+        }
+    }
+
+    /**
+     * Reads the values of the entity through the cached getters.
+     *
+     * @param entity the entity providing the values
+     * @return the values, in the order of the value columns
+     */
+
+    @Override
+    Object[] values(T entity) {
+        Object[] values = new Object[getters.length];
+        for (int i = 0; i < getters.length; i++) {
+            try {
+                values[i] = getters[i].invokeExact((Object) entity);
+            } catch (Throwable e) {
+                throw new RuntimeException("Failed to read fields of " + type.getSimpleName(), e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sets the version of a versioned entity through the cached setter.
+     *
+     * @param entity the entity to update
+     * @param version the version to assign
+     */
+
+    @Override
+    void setVersion(T entity, int version) {
+        if (versionSetter == null) {
+            throw new UnsupportedOperationException(type.getSimpleName() + " is not versioned");
+        }
+        try {
+            versionSetter.invokeExact((Object) entity, version);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to set version of " + type.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Sets the id of the entity, typically after it was generated by the database.
+     *
+     * @param entity the entity to update
+     * @param id the id to assign
+     */
+
+    @Override
+    void setId(T entity, int id) {
+        try {
+            idSetter.invokeExact((Object) entity, id);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to set id of " + type.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Creates a setter that reads the column with the getter matching the field type,
+     * so primitive values are not boxed. Null columns leave the field untouched.
+     *
+     * @param fieldType the type of the entity field
+     * @param writeMethod the handle of the field's setter
+     * @return the column setter
+     */
+
+    private static ColumnSetter createSetter(Class<?> fieldType, MethodHandle writeMethod) {
+        if (fieldType == int.class) {
+            MethodHandle handle = writeMethod.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (target, rs, column) -> {
+                int value = rs.getInt(column);
+                if (!rs.wasNull()) {
+                    handle.invokeExact(target, value);
+                }
+            };
+        }
+        if (fieldType == double.class) {
+            MethodHandle handle = writeMethod.asType(MethodType.methodType(void.class, Object.class, double.class));
+            return (target, rs, column) -> {
+                double value = rs.getDouble(column);
+                if (!rs.wasNull()) {
+                    handle.invokeExact(target, value);
+                }
+            };
+        }
+        MethodHandle handle = writeMethod.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        if (fieldType == String.class) {
+            return (target, rs, column) -> {
+                String value = rs.getString(column);
+                if (value != null) {
+                    handle.invokeExact(target, (Object) value);
+                }
+            };
+        }
+        if (fieldType == LocalDateTime.class) {
+            return (target, rs, column) -> {
+                Timestamp value = rs.getTimestamp(column);
+                if (value != null) {
+                    handle.invokeExact(target, (Object) value.toLocalDateTime());
+                }
+            };
+        }
+        return (target, rs, column) -> {
+            Object value = rs.getObject(column);
+            if (value != null) {
+                handle.invokeExact(target, value);
+            }
+        };
+    }
+
+    /**
+     * Creates an entity from the current row of the ResultSet.
+     *
+     * @param resultSet the ResultSet positioned on a row
+     * @param indexes the column indexes returned by {@link #resolveColumns(ResultSet)}
+     * @return the mapped entity
+     * @throws SQLException if a column cannot be read or a setter rejects its value
+     */
+
+    @Override
+    @SuppressWarnings("unchecked")
+    T mapRow(ResultSet resultSet, int[] indexes) throws SQLException {
+        try {
+            Object instance = constructor.invokeExact();
+            for (int i = 0; i < setters.length; i++) {
+                setters[i].set(instance, resultSet, indexes[i]);
+            }
+            return (T) instance;
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException("Mapping failed for " + type.getSimpleName(), e);
+        }
+    }
+}
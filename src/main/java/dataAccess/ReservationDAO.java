@@ -0,0 +1,274 @@
+package dataAccess;
+
+import dataModel.Reservation;
+import dataModel.StockAvailability;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Data Access Object for {@link Reservation} records, stored in the 'stock_reservation' table.
+ * Reserving takes the stock from the product immediately, so the stock of a product is always what can be
+ * promised; confirming keeps it taken and releasing or expiring gives it back where it was taken from:
+ * to the product row, or to the least stocked shard if it was taken from the shards and the product is still sharded,
+ * so the row of a sharded product stays at 0.
+ * The reservations of a product are found through the (product_id, expires_at) index, which includes
+ * the quantity, so the reserved stock is read without visiting the table.
+ */
+
+public class ReservationDAO {
+
+    private static final String RESERVE = """
+            WITH p AS (
+                UPDATE product SET current_stock = current_stock - ?
+                WHERE id = ? AND current_stock >= ?
+                RETURNING id
+            )
+            INSERT INTO stock_reservation (token, product_id, quantity, expires_at)
+            SELECT ?, p.id, ?, LOCALTIMESTAMP + ? * interval '1 millisecond' FROM p
+            RETURNING token, product_id, quantity, expires_at""";
+
+    private static final String INSERT_FROM_SHARDS = """
+            INSERT INTO stock_reservation (token, product_id, quantity, expires_at, from_shards)
+            VALUES (?, ?, ?, LOCALTIMESTAMP + ? * interval '1 millisecond', true)
+            RETURNING token, product_id, quantity, expires_at""";
+
+    private static final String RELEASE_EXPIRED = """
+            WITH expired AS (
+                SELECT token FROM stock_reservation WHERE expires_at <= LOCALTIMESTAMP
+                ORDER BY expires_at LIMIT ? FOR UPDATE SKIP LOCKED
+            ), removed AS (
+                DELETE FROM stock_reservation r USING expired WHERE r.token = expired.token
+                RETURNING r.product_id, r.quantity, r.from_shards
+            ), restored AS (
+                SELECT product_id, COALESCE(sum(quantity) FILTER (WHERE NOT from_shards), 0) AS row_quantity,
+                       COALESCE(sum(quantity) FILTER (WHERE from_shards), 0) AS shard_quantity
+                FROM removed GROUP BY product_id
+            ), target AS (
+                SELECT DISTINCT ON (s.product_id) s.product_id, s.shard
+                FROM product_stock_shard s JOIN restored ON s.product_id = restored.product_id
+                WHERE restored.shard_quantity > 0
+                ORDER BY s.product_id, s.stock, s.shard
+            ), locked AS (
+                SELECT product.id FROM product WHERE product.id IN (SELECT product_id FROM restored)
+                ORDER BY product.id FOR NO KEY UPDATE
+            ), updated AS (
+                UPDATE product SET current_stock = product.current_stock + restored.row_quantity
+                    + CASE WHEN target.product_id IS NULL THEN restored.shard_quantity ELSE 0 END
+                FROM restored JOIN locked ON locked.id = restored.product_id
+                     LEFT JOIN target ON target.product_id = restored.product_id
+                WHERE product.id = restored.product_id
+            ), shards_updated AS (
+                UPDATE product_stock_shard s SET stock = s.stock + restored.shard_quantity
+                FROM restored, target
+                WHERE restored.product_id = target.product_id AND s.product_id = target.product_id
+                  AND s.shard = target.shard
+            )
+            SELECT product_id FROM removed""";
+
+    private static final String RELEASE = """
+            WITH r AS (
+                DELETE FROM stock_reservation WHERE token = ? RETURNING product_id, quantity, from_shards
+            ), target AS (
+                SELECT s.product_id, s.shard FROM product_stock_shard s JOIN r ON s.product_id = r.product_id
+                WHERE r.from_shards
+                ORDER BY s.stock, s.shard LIMIT 1
+            ), row_restored AS (
+                UPDATE product SET current_stock = product.current_stock + r.quantity FROM r
+                WHERE product.id = r.product_id AND NOT EXISTS (SELECT 1 FROM target)
+            ), shard_restored AS (
+                UPDATE product_stock_shard s SET stock = s.stock + r.quantity FROM r, target
+                WHERE s.product_id = target.product_id AND s.shard = target.shard
+            )
+            SELECT product_id FROM r""";
+
+    private static final String AVAILABILITY = """
+            SELECT product.current_stock
+                       + COALESCE((SELECT sum(s.stock) FROM product_stock_shard s WHERE s.product_id = product.id), 0)
+                       AS available,
+                   COALESCE(r.reserved, 0) AS reserved
+            FROM product LEFT JOIN LATERAL (
+                SELECT sum(quantity) AS reserved
+                FROM stock_reservation
+                WHERE stock_reservation.product_id = product.id AND expires_at > LOCALTIMESTAMP
+            ) r ON true
+            WHERE product.id = ?""";
+
+    private final ConnectionScope scope;
+
+    /**
+     * Constructs a ReservationDAO that runs in the current transaction or on pooled connections.
+     */
+
+    public ReservationDAO() {
+        this(null);
+    }
+
+    /**
+     * Constructs a ReservationDAO that runs every operation on the given connection.
+     *
+     * @param connection the database connection, or null to borrow pooled connections
+     */
+
+    public ReservationDAO(Connection connection) {
+        this.scope = new ConnectionScope(connection);
+    }
+
+    /**
+     * Reserves stock of a product with a single statement that takes the stock from the product row
+     * only if enough is left and records the reservation.
+     *
+     * @param productId the ID of the product
+     * @param quantity the quantity to reserve
+     * @param ttlMillis the time to live of the reservation, in milliseconds
+     * @return the reservation, or null if the stock is insufficient or the product does not exist
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Reservation reserve(int productId, int quantity, long ttlMillis) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(RESERVE);
+            ps.setInt(1, quantity);
+            ps.setInt(2, productId);
+            ps.setInt(3, quantity);
+            ps.setObject(4, UUID.randomUUID());
+            ps.setInt(5, quantity);
+            ps.setLong(6, ttlMillis);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        });
+    }
+
+    /**
+     * Records a reservation of stock that the caller has already taken from the shards of the product
+     * in the same transaction, so releasing it gives the stock back to the shards.
+     *
+     * @param productId the ID of the product
+     * @param quantity the reserved quantity
+     * @param ttlMillis the time to live of the reservation, in milliseconds
+     * @return the reservation
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Reservation insertFromShards(int productId, int quantity, long ttlMillis) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(INSERT_FROM_SHARDS);
+            ps.setObject(1, UUID.randomUUID());
+            ps.setInt(2, productId);
+            ps.setInt(3, quantity);
+            ps.setLong(4, ttlMillis);
+            try(ResultSet rs = ps.executeQuery()) {
+                if(rs.next()) {
+                    return read(rs);
+                }
+            }
+            throw new SQLException("Failed to insert reservation");
+        });
+    }
+
+    /**
+     * Confirms a reservation that has not expired: the reservation is removed and its stock stays taken.
+     *
+     * @param token the token of the reservation
+     * @return the confirmed reservation, or null if it does not exist, has expired or was already confirmed or released
+     * @throws SQLException if a database access error occurs
+     */
+
+    public Reservation confirm(UUID token) throws SQLException {
+        String sql = "DELETE FROM stock_reservation WHERE token = ? AND expires_at > LOCALTIMESTAMP"
+                + " RETURNING token, product_id, quantity, expires_at";
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(sql);
+            ps.setObject(1, token);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        });
+    }
+
+    /**
+     * Releases a reservation with a single statement that removes it and gives its stock back where it was taken
+     * from: to the least stocked shard of the product if it came from the shards and the product is still sharded,
+     * otherwise to the product row.
+     *
+     * @param token the token of the reservation
+     * @return the ID of the product whose stock was given back, or -1 if the reservation no longer exists
+     * @throws SQLException if a database access error occurs
+     */
+
+    public int release(UUID token) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(RELEASE);
+            ps.setObject(1, token);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        });
+    }
+
+    /**
+     * Releases up to the given number of expired reservations with a single statement, giving their stock back
+     * with one update per product, and per product with shards, like {@link #release}. Reservations locked by
+     * a concurrent confirm or release are skipped, and the products are locked in ascending ID order like order
+     * placement does.
+     *
+     * @param limit the maximum number of reservations to release
+     * @return the product ID of every released reservation
+     * @throws SQLException if a database access error occurs
+     */
+
+    public List<Integer> releaseExpired(int limit) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(RELEASE_EXPIRED);
+            ps.setInt(1, limit);
+            List<Integer> productIds = new ArrayList<>();
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()) {
+                    productIds.add(rs.getInt(1));
+                }
+            }
+            return productIds;
+        });
+    }
+
+    /**
+     * Finds the stock of a product that can be promised and the stock held by its active reservations.
+     * The stock of expired reservations that were not released yet is in neither: it cannot be reserved or ordered
+     * until the sweeper gives it back, so counting it as available would report stock a reservation cannot take.
+     *
+     * @param productId the ID of the product
+     * @return the availability of the product, or null if it does not exist
+     * @throws SQLException if a database access error occurs
+     */
+
+    public StockAvailability findAvailability(int productId) throws SQLException {
+        return scope.call(connection -> {
+            PreparedStatement ps = StatementCache.forConnection(connection).prepare(AVAILABILITY);
+            ps.setInt(1, productId);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new StockAvailability(productId, rs.getInt("available"), rs.getInt("reserved"))
+                        : null;
+            }
+        });
+    }
+
+    /**
+     * Creates a reservation from the current row of the ResultSet.
+     *
+     * @param rs the ResultSet positioned on a row
+     * @return the reservation
+     * @throws SQLException if there is an error accessing the ResultSet
+     */
+
+    private static Reservation read(ResultSet rs) throws SQLException {
+        return new Reservation(
+                rs.getObject("token", UUID.class),
+                rs.getInt("product_id"),
+                rs.getInt("quantity"),
+                rs.getTimestamp("expires_at").toLocalDateTime()
+        );
+    }
+}
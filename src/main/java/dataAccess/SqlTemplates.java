@@ -0,0 +1,137 @@
+package dataAccess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SQL statements used by {@link AbstractDAO} for an entity type.
+ * They are generated once per entity class from its {@link EntityMapper} and reused by every DAO instance.
+ *
+ * @param table the quoted table name
+ * @param selectAll the query selecting every row
+ * @param selectById the query selecting one row by id
+ * @param selectByIds the query selecting the rows whose id is in an array parameter
+ * @param insert the insert of every non-id column
+ * @param update the update of every non-id column, with the id as last parameter; for a versioned entity
+ *               the version is set to its bound value plus one and the id is followed by the expected version
+ * @param delete the delete of one row by id
+ */
+
+record SqlTemplates(
+        String table,
+        String selectAll,
+        String selectById,
+        String selectByIds,
+        String insert,
+        String update,
+        String delete
+) {
+
+    private static final Map<Class<?>, SqlTemplates> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the SQL templates of the given entity class, generating them on first use.
+     *
+     * @param type the entity class
+     * @return the cached SQL templates
+     */
+
+    static SqlTemplates of(Class<?> type) {
+        return TEMPLATES.computeIfAbsent(type, t -> create(EntityMapper.of(t)));
+    }
+
+    /**
+     * Generates the keyset pagination query sorted by the given column, with the id as tie-breaker.
+     * The page starts after the row with the ID given as first parameter and the limit is the last parameter.
+     * The first page is selected with {@code afterId <= 0}, which skips the keyset condition.
+     *
+     * @param column the validated column to sort by
+     * @param first whether the query selects the first page
+     * @return the page query
+     */
+
+    String page(String column, boolean first) {
+        String id = EntityMapper.ID;
+        StringBuilder query = new StringBuilder(selectAll);
+        if (!first) {
+            if (column.equals(id)) {
+                query.append(" WHERE ").append(id).append(" > ?");
+            } else {
+                query.append(" WHERE (").append(column).append(", ").append(id).append(") > (SELECT ")
+                        .append(column).append(", ").append(id).append(" FROM ").append(table)
+                        .append(" WHERE ").append(id).append(" = ?)");
+            }
+        }
+        query.append(" ORDER BY ");
+        if (!column.equals(id)) {
+            query.append(column).append(", ");
+        }
+        return query.append(id).append(" LIMIT ?").toString();
+    }
+
+    /**
+     * Generates the update of the given columns only, with the id as parameter after the column values.
+     * For a versioned entity the version is incremented and the expected version is the last parameter.
+     *
+     * @param columns the changed columns, not including the version
+     * @param versioned whether the entity has a version column
+     * @return the update statement
+     */
+
+    String update(List<String> columns, boolean versioned) {
+        StringBuilder query = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (String column : columns) {
+            query.append(column).append(" = ?, ");
+        }
+        if (versioned) {
+            query.append(EntityMapper.VERSION).append(" = ").append(EntityMapper.VERSION).append(" + 1");
+        } else {
+            query.setLength(query.length() - 2);
+        }
+        query.append(" WHERE ").append(EntityMapper.ID).append(" = ?");
+        return versioned ? query.append(versionCondition()).toString() : query.toString();
+    }
+
+    /**
+     * Generates the optimistic lock condition of versioned updates.
+     *
+     * @return the condition on the version, with the expected version as parameter
+     */
+
+    private static String versionCondition() {
+        return " AND " + EntityMapper.VERSION + " = ?";
+    }
+
+    /**
+     * Generates the SQL templates from the columns of the entity mapper.
+     *
+     * @param mapper the mapper of the entity
+     * @return the generated SQL templates
+     */
+
+    private static SqlTemplates create(EntityMapper<?> mapper) {
+        String table = "\"" + mapper.tableName() + "\"";
+        String[] valueColumns = mapper.valueColumns();
+        String select = "SELECT " + String.join(", ", mapper.columns()) + " FROM " + table;
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", valueColumns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(valueColumns.length, "?")) + ")";
+        List<String> assignments = new ArrayList<>();
+        for (String column : valueColumns) {
+            assignments.add(column.equals(EntityMapper.VERSION) ? column + " = ? + 1" : column + " = ?");
+        }
+        String update = "UPDATE " + table + " SET " + String.join(", ", assignments) + " WHERE "
+                + EntityMapper.ID + " = ?" + (mapper.versionIndex() >= 0 ? versionCondition() : "");
+        return new SqlTemplates(
+                table,
+                select,
+                select + " WHERE " + EntityMapper.ID + " = ?",
+                select + " WHERE " + EntityMapper.ID + " = ANY(?)",
+                insert,
+                update,
+                "DELETE FROM " + table + " WHERE " + EntityMapper.ID + " = ?"
+        );
+    }
+}
@@ -0,0 +1,40 @@
+package dataAccess;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when the update of a versioned entity finds that its row was changed since the entity was read.
+ * Nothing is written; the update can be retried after reading the entity again.
+ * The SQL state is {@code 40001}, the state of serialization failures, which callers treat as retryable.
+ */
+
+public class StaleEntityException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+
+    /**
+     * Constructs a StaleEntityException.
+     *
+     * @param type the entity class
+     * @param id the ID of the entity
+     * @param version the version the entity was read with
+     */
+
+    public StaleEntityException(Class<?> type, int id, int version) {
+        super(type.getSimpleName() + " " + id + " was changed or deleted since version " + version
+                + " was read", "40001");
+        this.id = id;
+    }
+
+    /**
+     * Gets the ID of the entity that could not be updated.
+     *
+     * @return the entity ID
+     */
+
+    public int getId() {
+        return id;
+    }
+}
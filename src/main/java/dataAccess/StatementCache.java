@@ -0,0 +1,191 @@
+package dataAccess;
+
+import connection.ConnectionFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of prepared statements for a single physical database connection.
+ * Reusing the same PreparedStatement lets the PostgreSQL driver switch to a server-side
+ * prepared plan after a few executions. The least recently used statement is closed
+ * when the cache is full. Pooled connections are unwrapped, so the statements outlive each borrow
+ * and are reused by every operation that gets the same physical connection from the pool.
+ * Statements obtained from the cache must not be closed by the caller.
+ */
+
+public class StatementCache {
+
+    private static final Map<Connection, StatementCache> CACHES = new IdentityHashMap<>();
+
+    private final Connection connection;
+    private final int capacity;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructs a StatementCache for the given connection.
+     *
+     * @param connection the connection the statements are prepared on
+     * @param capacity the maximum number of statements kept open
+     */
+
+    private StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    ConnectionFactory.close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the statement cache of the physical connection behind the given connection, creating it on first use.
+     * The capacity is read from the {@code db.statementCacheSize} property.
+     * Caches of connections that have been closed are dropped when a new cache is created.
+     *
+     * @param connection the database connection, possibly borrowed from the pool
+     * @return the statement cache bound to the physical connection
+     * @throws SQLException if the connection cannot be unwrapped
+     */
+
+    public static StatementCache forConnection(Connection connection) throws SQLException {
+        connection = connection.unwrap(Connection.class);
+        synchronized (CACHES) {
+            StatementCache cache = CACHES.get(connection);
+            if (cache == null) {
+                CACHES.keySet().removeIf(StatementCache::isClosed);
+                cache = new StatementCache(connection, ConnectionFactory.getIntProperty("db.statementCacheSize", 64));
+                CACHES.put(connection, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Checks whether the given connection has been closed.
+     *
+     * @param connection the connection to check
+     * @return {@code true} if the connection is closed or its state cannot be read
+     */
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns a cached prepared statement for the given SQL, preparing it on a miss.
+     *
+     * @param sql the SQL of the statement
+     * @return the prepared statement, with its parameters cleared
+     * @throws SQLException if the statement cannot be prepared
+     */
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Returns a cached prepared statement for the given SQL, preparing it on a miss.
+     *
+     * @param sql the SQL of the statement
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} or {@link Statement#NO_GENERATED_KEYS}
+     * @return the prepared statement, with its parameters cleared
+     * @throws SQLException if the statement cannot be prepared
+     */
+
+    public synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+        PreparedStatement statement = statements.get(key);
+        if (statement != null && !statement.isClosed()) {
+            hits.incrementAndGet();
+            statement.clearParameters();
+            return statement;
+        }
+        misses.incrementAndGet();
+        statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Closes every cached statement and empties the cache.
+     */
+
+    public synchronized void clear() {
+        statements.values().forEach(ConnectionFactory::close);
+        statements.clear();
+    }
+
+    /**
+     * Gets the number of requests served by an already prepared statement.
+     *
+     * @return the number of cache hits
+     */
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of requests that had to prepare a new statement.
+     *
+     * @return the number of cache misses
+     */
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of statements closed because the cache was full.
+     *
+     * @return the number of evictions
+     */
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the fraction of requests served from the cache.
+     *
+     * @return the hit ratio between 0 and 1
+     */
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Returns a summary of the cache counters.
+     *
+     * @return formatted string with hits, misses and evictions
+     */
+
+    @Override
+    public String toString() {
+        return String.format("StatementCache[hits=%d, misses=%d, evictions=%d, hit ratio=%.2f]",
+                hits.get(), misses.get(), evictions.get(), getHitRatio());
+    }
+}
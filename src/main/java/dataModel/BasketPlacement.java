@@ -0,0 +1,20 @@
+package dataModel;
+
+/**
+ * Represents the outcome of placing a multi-line order with a single database statement.
+ *
+ * @param status whether the order was placed, or why it was not
+ * @param order the saved order header with its generated ID and total quantity, or null if the order was not placed
+ * @param bill the multi-line bill generated for the order, or null if the order was not placed
+ * @param productId the ID of the first product that prevented the order, or -1
+ * @param availableStock the stock of that product seen by the statement, or -1 if it does not exist
+ */
+
+public record BasketPlacement(
+        OrderPlacement.Status status,
+        Order order,
+        Bill bill,
+        int productId,
+        int availableStock
+) {
+}
@@ -3,10 +3,12 @@ package dataModel;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 /**
  * Represents a bill issued for a placed order.
  * Contains client, product, pricing and timestamps.
+ * The bill of a multi-line order also lists its lines, and its product and quantity summarize them.
  *
  * @param id the ID of the bill itself
  * @param orderId the ID of the order
@@ -15,6 +17,7 @@ import java.time.format.DateTimeFormatter;
  * @param quantity the quantity ordered
  * @param totalPrice the total price of the order
  * @param orderDate the date and time when the order was placed
+ * @param lines the lines of a multi-line order, or an empty list for a single-product order
  */
 
 public record Bill(
@@ -24,9 +27,35 @@ public record Bill(
         String productName,
         int quantity,
         BigDecimal totalPrice,
-        LocalDateTime orderDate
+        LocalDateTime orderDate,
+        List<BillLine> lines
 ) {
 
+    /**
+     * Creates a bill, copying the lines into an unmodifiable list.
+     */
+
+    public Bill {
+        lines = lines == null ? List.of() : List.copyOf(lines);
+    }
+
+    /**
+     * Creates the bill of a single-product order.
+     *
+     * @param id the ID of the bill itself
+     * @param orderId the ID of the order
+     * @param clientName the name of the client placing the order
+     * @param productName the name of the product ordered
+     * @param quantity the quantity ordered
+     * @param totalPrice the total price of the order
+     * @param orderDate the date and time when the order was placed
+     */
+
+    public Bill(int id, int orderId, String clientName, String productName, int quantity, BigDecimal totalPrice,
+                LocalDateTime orderDate) {
+        this(id, orderId, clientName, productName, quantity, totalPrice, orderDate, List.of());
+    }
+
     /**
      * Returns a formatted invoice string.
      *
@@ -34,6 +63,9 @@ public record Bill(
      */
 
     public String toFormattedString() {
+        if(!lines.isEmpty()) {
+            return toFormattedLines();
+        }
         return String.format("""
             ============= INVOICE =============
             Order ID: %d
@@ -56,6 +88,41 @@ public record Bill(
                 totalPrice);
     }
 
+    /**
+     * Returns a formatted invoice string with one row per line of a multi-line order.
+     *
+     * @return formatted invoice text block
+     */
+
+    private String toFormattedLines() {
+        StringBuilder text = new StringBuilder(String.format("""
+            ============= INVOICE =============
+            Order ID: %d
+            Invoice ID: %d
+            Date: %s
+            --------------------------------
+            Client: %s
+            --------------------------------
+            """,
+                orderId,
+                id,
+                orderDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
+                clientName));
+        for(BillLine line : lines) {
+            text.append(String.format("%s x%d @ $%.2f = $%.2f%n",
+                    line.productName(), line.quantity(), line.unitPrice(), line.totalPrice()));
+        }
+        text.append(String.format("""
+            --------------------------------
+            Items: %d
+            TOTAL: $%.2f
+            ==================================
+            """,
+                quantity,
+                totalPrice));
+        return text.toString();
+    }
+
     /**
      * Returns a compact summary of the bill.
      *
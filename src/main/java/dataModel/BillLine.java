@@ -0,0 +1,20 @@
+package dataModel;
+
+import java.math.BigDecimal;
+
+/**
+ * Represents one line of a bill issued for a multi-line order.
+ *
+ * @param productName the name of the product ordered
+ * @param quantity the quantity ordered
+ * @param unitPrice the price of the product when the order was placed
+ * @param totalPrice the total price of the line
+ */
+
+public record BillLine(
+        String productName,
+        int quantity,
+        BigDecimal unitPrice,
+        BigDecimal totalPrice
+) {
+}
@@ -0,0 +1,43 @@
+package dataModel;
+
+/**
+ * Represents a snapshot of the activity of an entity cache.
+ *
+ * @param name the name of the cache
+ * @param hits the number of lookups served from the cache
+ * @param misses the number of lookups that went to the database
+ * @param evictions the number of entries dropped because the cache was full or the entry had expired
+ * @param size the number of entries currently cached
+ */
+
+public record CacheStats(
+        String name,
+        long hits,
+        long misses,
+        long evictions,
+        int size
+) {
+
+    /**
+     * Gets the fraction of lookups served from the cache.
+     *
+     * @return the hit ratio between 0 and 1, or 0 if there were no lookups
+     */
+
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns a compact summary of the cache statistics.
+     *
+     * @return a one-line summary of the statistics
+     */
+
+    @Override
+    public String toString() {
+        return String.format("Cache %s | hits: %d | misses: %d | hit ratio: %.1f%% | evictions: %d | size: %d\n",
+                name, hits, misses, hitRatio() * 100, evictions, size);
+    }
+}
@@ -0,0 +1,90 @@
+package dataModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a change to a row of the database, published by the {@code notify_change} trigger
+ * to every running instance of the application.
+ * The trigger runs once per statement and publishes one notification per table and operation, listing the IDs
+ * of every changed row, which is parsed into one event per row. A statement changing more than 500 rows of
+ * a table publishes a resynchronization of the table instead, since a notification payload is limited
+ * to 8000 bytes.
+ *
+ * @param table the name of the changed table, or null for a resynchronization of every table
+ * @param operation what happened to the row
+ * @param id the ID of the changed row, or 0 for a resynchronization
+ */
+
+public record ChangeEvent(
+        String table,
+        Operation operation,
+        int id
+) {
+
+    /**
+     * The kind of change.
+     */
+
+    public enum Operation {
+        /** The row was inserted. */
+        INSERT,
+        /** The row was updated. */
+        UPDATE,
+        /** Only the stock of a product row was updated; its name, price and version are unchanged. */
+        STOCK,
+        /** The row was deleted. */
+        DELETE,
+        /**
+         * Changes may have been missed or were too many to list, so everything derived from the table,
+         * or from the whole database if there is no table, should be read again.
+         */
+        RESYNC
+    }
+
+    /**
+     * Creates the event telling subscribers that changes may have been missed.
+     *
+     * @return the resynchronization event
+     */
+
+    public static ChangeEvent resync() {
+        return new ChangeEvent(null, Operation.RESYNC, 0);
+    }
+
+    /**
+     * Parses the payload of a notification, formatted as {@code table:operation:id,id,...}.
+     *
+     * @param payload the payload of the notification
+     * @return one change event per listed ID
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+
+    public static List<ChangeEvent> parse(String payload) {
+        String[] parts = payload.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed change notification: " + payload);
+        }
+        try {
+            Operation operation = Operation.valueOf(parts[1]);
+            List<ChangeEvent> events = new ArrayList<>();
+            for (String id : parts[2].split(",")) {
+                events.add(new ChangeEvent(parts[0], operation, Integer.parseInt(id)));
+            }
+            return events;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed change notification: " + payload, e);
+        }
+    }
+
+    /**
+     * Checks whether the event concerns the given table or asks for a resynchronization of every table.
+     *
+     * @param name the name of the table
+     * @return {@code true} if subscribers interested in the table should handle the event
+     */
+
+    public boolean affects(String name) {
+        return name.equals(table) || operation == Operation.RESYNC && table == null;
+    }
+}
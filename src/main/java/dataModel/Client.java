@@ -4,6 +4,7 @@ package dataModel;
  * Represents a client entity with personal information, such as name, email, address, age and ID.
  */
 
+@Entity
 public class Client {
 
     private String name;
@@ -0,0 +1,37 @@
+package dataModel;
+
+/**
+ * Represents a snapshot of the throughput and latency of an order processing engine.
+ *
+ * @param placed the number of orders placed
+ * @param rejected the number of orders rejected for insufficient stock
+ * @param failed the number of orders that failed with an error
+ * @param ordersPerSecond the number of orders placed per second since the first order was submitted
+ * @param p50Millis the median latency from submission to completion, in milliseconds
+ * @param p99Millis the 99th percentile latency from submission to completion, in milliseconds
+ * @param maxMillis the highest latency recorded, in milliseconds
+ */
+
+public record EngineStats(
+        long placed,
+        long rejected,
+        long failed,
+        double ordersPerSecond,
+        double p50Millis,
+        double p99Millis,
+        double maxMillis
+) {
+
+    /**
+     * Returns a compact summary of the engine statistics.
+     *
+     * @return a one-line summary of the statistics
+     */
+
+    @Override
+    public String toString() {
+        return String.format("Orders | placed: %d | rejected: %d | failed: %d | %.0f orders/s"
+                        + " | p50: %.2f ms | p99: %.2f ms | max: %.2f ms\n",
+                placed, rejected, failed, ordersPerSecond, p50Millis, p99Millis, maxMillis);
+    }
+}
@@ -0,0 +1,18 @@
+package dataModel;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a data model class that is stored in a database table named after the class.
+ * The entity mapper processor generates a typed mapper for every marked class at compile time,
+ * which the DAOs use instead of reflection. The class needs a default constructor, an {@code int id}
+ * field, and a getter and setter for every field.
+ */
+
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Entity {
+}
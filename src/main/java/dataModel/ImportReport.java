@@ -0,0 +1,52 @@
+package dataModel;
+
+import java.util.List;
+
+/**
+ * Represents the outcome of a bulk import from a CSV file.
+ *
+ * @param rowsRead the number of data rows read from the file
+ * @param rowsImported the number of rows written to the database
+ * @param rejects the rows that were not imported, with the reason
+ * @param elapsedMillis the duration of the import in milliseconds
+ */
+
+public record ImportReport(
+        long rowsRead,
+        long rowsImported,
+        List<Reject> rejects,
+        long elapsedMillis
+) {
+
+    /**
+     * Represents a row of the file that failed validation.
+     *
+     * @param line the line number of the row in the file
+     * @param reason the validation error
+     */
+
+    public record Reject(long line, String reason) {
+    }
+
+    /**
+     * Returns the import throughput.
+     *
+     * @return the number of rows read per second
+     */
+
+    public double rowsPerSecond() {
+        return elapsedMillis == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Returns a compact summary of the import.
+     *
+     * @return a one-line summary of the import
+     */
+
+    @Override
+    public String toString() {
+        return String.format("Import | read: %d | imported: %d | rejected: %d | %.0f rows/s\n",
+                rowsRead, rowsImported, rejects.size(), rowsPerSecond());
+    }
+}
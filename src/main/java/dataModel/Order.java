@@ -6,6 +6,7 @@ import java.time.LocalDateTime;
  * Represents an order placed by a client.
  */
 
+@Entity
 public class Order {
 
     private int id;
@@ -0,0 +1,14 @@
+package dataModel;
+
+/**
+ * Represents one line of a multi-line order: a product and the quantity ordered of it.
+ *
+ * @param productId the ID of the product being ordered
+ * @param quantity the quantity ordered
+ */
+
+public record OrderLine(
+        int productId,
+        int quantity
+) {
+}
@@ -0,0 +1,30 @@
+package dataModel;
+
+/**
+ * Represents the outcome of placing an order with a single database statement.
+ *
+ * @param status whether the order was placed, or why it was not
+ * @param order the saved order with its generated ID, or null if the order was not placed
+ * @param bill the bill generated for the order, or null if the order was not placed
+ * @param availableStock the stock of the product seen by the statement before the order,
+ *                       or -1 if the product does not exist
+ */
+
+public record OrderPlacement(
+        Status status,
+        Order order,
+        Bill bill,
+        int availableStock
+) {
+
+    /**
+     * The possible outcomes of placing an order.
+     */
+
+    public enum Status {
+        PLACED,
+        UNDER_STOCK,
+        UNKNOWN_CLIENT,
+        UNKNOWN_PRODUCT
+    }
+}
@@ -0,0 +1,44 @@
+package dataModel;
+
+/**
+ * Represents a snapshot of the activity of a group-commit order pipeline.
+ *
+ * @param placed the number of orders placed
+ * @param rejected the number of orders rejected for insufficient stock or invalid data
+ * @param failed the number of orders that failed with an error
+ * @param batches the number of transactions committed or attempted
+ * @param averageBatchSize the average number of orders per transaction
+ * @param largestBatch the largest number of orders in one transaction
+ * @param fallbacks the number of failed transactions whose orders were placed again one by one
+ * @param queueDepth the number of orders waiting to be written
+ * @param p50BatchMillis the median duration of a transaction, in milliseconds
+ * @param p99BatchMillis the 99th percentile duration of a transaction, in milliseconds
+ */
+
+public record PipelineStats(
+        long placed,
+        long rejected,
+        long failed,
+        long batches,
+        double averageBatchSize,
+        int largestBatch,
+        long fallbacks,
+        int queueDepth,
+        double p50BatchMillis,
+        double p99BatchMillis
+) {
+
+    /**
+     * Returns a compact summary of the pipeline statistics.
+     *
+     * @return a one-line summary of the statistics
+     */
+
+    @Override
+    public String toString() {
+        return String.format("Pipeline | placed: %d | rejected: %d | failed: %d | batches: %d | avg batch: %.1f"
+                        + " | largest: %d | fallbacks: %d | queued: %d | p50: %.2f ms | p99: %.2f ms\n",
+                placed, rejected, failed, batches, averageBatchSize, largestBatch, fallbacks, queueDepth,
+                p50BatchMillis, p99BatchMillis);
+    }
+}
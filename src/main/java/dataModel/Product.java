@@ -2,14 +2,18 @@ package dataModel;
 
 /**
  * Represents a product with a name, price and available stock.
+ * The version is used for optimistic locking: it is incremented by every update of the product,
+ * but not by the stock decrements of orders.
  */
 
+@Entity
 public class Product {
 
     private int id;
     private String productName;
     private double price;
     private int currentStock;
+    private int version;
 
     /**
      * Default no-argument constructor for creating an empty Product.
@@ -132,6 +136,26 @@ public class Product {
         this.currentStock = currentStock;
     }
 
+    /**
+     * Gets the version of the product, used for optimistic locking.
+     *
+     * @return the version the product was read with
+     */
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the product.
+     *
+     * @param version the version of the product
+     */
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     /**
      * Returns a string representation of the product.
      *
@@ -0,0 +1,21 @@
+package dataModel;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Represents stock held for a client until the reservation is confirmed, released or expires.
+ *
+ * @param token the token identifying the reservation
+ * @param productId the ID of the reserved product
+ * @param quantity the reserved quantity
+ * @param expiresAt the date and time after which the stock is given back
+ */
+
+public record Reservation(
+        UUID token,
+        int productId,
+        int quantity,
+        LocalDateTime expiresAt
+) {
+}
@@ -0,0 +1,16 @@
+package dataModel;
+
+/**
+ * Represents the stock of a product that can be promised to new orders.
+ *
+ * @param productId the ID of the product
+ * @param available the stock that can be reserved or ordered now, in the product row and its shards
+ * @param reserved the stock held by active reservations
+ */
+
+public record StockAvailability(
+        int productId,
+        int available,
+        int reserved
+) {
+}
@@ -5,6 +5,7 @@ module com.example.pt2025_30422_larisa_pasca_assignment_3 {
     requires java.desktop;
     requires java.naming;
     requires org.postgresql.jdbc;
+    requires jdk.management;
 
 
     opens com.example.pt2025_30422_larisa_pasca_assignment_3 to javafx.fxml;
@@ -1,6 +1,7 @@
 package presentation;
 
 import businessLogic.ClientBLL;
+import connection.ConnectionFactory;
 import dataModel.Client;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
@@ -11,12 +12,21 @@ import java.util.Optional;
 /**
  * A JavaFX BorderPane for displaying clients in a TableView.
  * Provides functionalities such as adding, editing and deleting clients.
+ * Rows changed by this or any other instance are updated in place as their change notifications arrive.
  */
 
 public class ClientWindow extends BorderPane {
 
+    private static final int PAGE_SIZE = 100;
+
     private final ClientBLL clientBLL;
     private final TableView<Client> table = new TableView<>();
+    private final Button loadMoreButton = new Button("Load More");
+    private final ProgressIndicator progress = new ProgressIndicator();
+    private final UiTasks tasks = new UiTasks(progress);
+    private int lastClientId;
+    private boolean allLoaded;
+    private final LiveRows<Client> rows;
 
     /**
      * Constructs a ClientWindow with the specified business logic layer.
@@ -28,6 +38,10 @@ public class ClientWindow extends BorderPane {
         this.clientBLL = clientBLL;
         initUI();
         loadClients();
+        this.rows = new LiveRows<>(table, "client", Client::getId, clientBLL::findByIds,
+                id -> id <= lastClientId || allLoaded,
+                id -> lastClientId = Math.max(lastClientId, id), this::loadClients, tasks);
+        ConnectionFactory.getChangeListener().subscribe(rows::onChange);
     }
 
     /**
@@ -41,7 +55,8 @@ public class ClientWindow extends BorderPane {
         Button editButton = new Button("Edit Client");
         Button deleteButton = new Button("Delete Client");
 
-        HBox buttonBox = new HBox(10, addButton, editButton, deleteButton);
+        progress.setMaxSize(24, 24);
+        HBox buttonBox = new HBox(10, addButton, editButton, deleteButton, loadMoreButton, progress);
         buttonBox.setPadding(new Insets(10));
         setBottom(buttonBox);
 
@@ -53,20 +68,51 @@ public class ClientWindow extends BorderPane {
             }
         });
         deleteButton.setOnAction(e -> deleteClient());
+        loadMoreButton.setOnAction(e -> loadNextPage());
     }
 
     /**
-     * Loads all clients from the BLL and populates the table with them.
+     * Reloads the table from the first page of clients, superseding any page still loading.
      */
 
     private void loadClients() {
-        try {
-            List<Client> clients = clientBLL.getAllClients();
-            Table.createTable(table, clients);
-        } catch(Exception e) {
+        loadPage(0, true);
+    }
+
+    /**
+     * Loads the next page of clients and appends it to the table.
+     */
+
+    private void loadNextPage() {
+        loadPage(lastClientId, false);
+    }
+
+    /**
+     * Loads a page of clients from the BLL in the background and shows it in the table.
+     * The "Load More" button is disabled while the page loads and once the last page was loaded.
+     *
+     * @param afterId the ID of the last client already shown, or 0 for the first page
+     * @param replace {@code true} to replace the rows of the table, {@code false} to append to them
+     */
+
+    private void loadPage(int afterId, boolean replace) {
+        loadMoreButton.setDisable(true);
+        tasks.submit("page", () -> clientBLL.getClientsPage(afterId, PAGE_SIZE), clients -> {
+            if (replace) {
+                table.getItems().clear();
+                lastClientId = 0;
+            }
+            List<Client> fresh = clients.stream().filter(c -> c.getId() > lastClientId).toList();
+            Table.appendRows(table, fresh);
+            if (!fresh.isEmpty()) {
+                lastClientId = fresh.get(fresh.size() - 1).getId();
+            }
+            allLoaded = clients.size() < PAGE_SIZE;
+            loadMoreButton.setDisable(allLoaded);
+        }, e -> {
+            loadMoreButton.setDisable(false);
             showAlert("Error loading clients: " + e.getMessage());
-            e.printStackTrace();
-        }
+        });
     }
 
     /**
@@ -125,18 +171,10 @@ public class ClientWindow extends BorderPane {
         });
 
         Optional<Client> result = dialog.showAndWait();
-        result.ifPresent(clientToSave -> {
-            try {
-                if (client == null) {
-                    clientBLL.addClient(clientToSave);
-                } else {
-                    clientBLL.updateClient(clientToSave, clientToSave.getId());
-                }
-                loadClients();
-            } catch (Exception e) {
-                showAlert("Error saving client: " + e.getMessage());
-            }
-        });
+        result.ifPresent(clientToSave -> tasks.submit(null,
+                () -> client == null ? clientBLL.addClient(clientToSave) : clientBLL.updateClient(clientToSave, client),
+                saved -> rows.refresh(List.of(saved.getId())),
+                e -> showAlert("Error saving client: " + e.getMessage())));
     }
 
     /**
@@ -146,12 +184,10 @@ public class ClientWindow extends BorderPane {
     private void deleteClient() {
         Client selected = table.getSelectionModel().getSelectedItem();
         if(selected != null) {
-            try {
+            tasks.submit(null, () -> {
                 clientBLL.deleteClient(selected.getId());
-                loadClients();
-            } catch (Exception e) {
-                showAlert("Error deleting client: " + e.getMessage());
-            }
+                return selected.getId();
+            }, id -> rows.refresh(List.of(id)), e -> showAlert("Error deleting client: " + e.getMessage()));
         }
     }
 
@@ -0,0 +1,175 @@
+package presentation;
+
+import dataModel.ChangeEvent;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableView;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the rows of a paged table in sync with the database by applying the change notifications of one table.
+ * The IDs changed since the last update are collected on the listener thread and read back with a single query
+ * in the background, so a burst of changes costs one query and one table update on the JavaFX application thread.
+ * Only one read is in flight at a time, so rows read earlier never overwrite rows read later.
+ * Changed rows are replaced in place, deleted rows are removed, and new rows are appended if they fall within
+ * the pages already loaded; the table is only reloaded when notifications may have been missed or a single
+ * statement changed too many rows of the table to list them.
+ *
+ * @param <T> the type of the rows
+ */
+
+class LiveRows<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(LiveRows.class.getName());
+
+    private final TableView<T> table;
+    private final String tableName;
+    private final ToIntFunction<T> idOf;
+    private final Function<Collection<Integer>, Map<Integer, T>> loader;
+    private final IntPredicate loaded;
+    private final IntConsumer appended;
+    private final Runnable reload;
+    private final UiTasks tasks;
+    private boolean loading;
+    private Set<Integer> pending = new HashSet<>();
+    private boolean resync;
+    private boolean scheduled;
+
+    /**
+     * Constructs a LiveRows.
+     *
+     * @param table the table whose rows are kept in sync
+     * @param tableName the name of the database table the rows come from
+     * @param idOf gets the ID of a row
+     * @param loader reads the rows with the given IDs, leaving out the ones that no longer exist
+     * @param loaded tells whether a row with the given ID belongs to the pages already loaded
+     * @param appended called with the ID of every appended row, so paging can continue after it
+     * @param reload reloads the whole table
+     * @param tasks runs the reads in the background
+     */
+
+    LiveRows(TableView<T> table, String tableName, ToIntFunction<T> idOf,
+             Function<Collection<Integer>, Map<Integer, T>> loader, IntPredicate loaded, IntConsumer appended,
+             Runnable reload, UiTasks tasks) {
+        this.table = table;
+        this.tableName = tableName;
+        this.idOf = idOf;
+        this.loader = loader;
+        this.loaded = loaded;
+        this.appended = appended;
+        this.reload = reload;
+        this.tasks = tasks;
+    }
+
+    /**
+     * Records a change notification and schedules the table update, if one is not already scheduled.
+     * Called on the listener thread.
+     *
+     * @param event the change event
+     */
+
+    synchronized void onChange(ChangeEvent event) {
+        if (!event.affects(tableName)) {
+            return;
+        }
+        if (event.operation() == ChangeEvent.Operation.RESYNC) {
+            resync = true;
+        } else {
+            pending.add(event.id());
+        }
+        if (!scheduled) {
+            scheduled = true;
+            Platform.runLater(this::apply);
+        }
+    }
+
+    /**
+     * Reads the given rows again and updates the table, for example right after they were written.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param ids the IDs of the changed rows
+     */
+
+    void refresh(Collection<Integer> ids) {
+        synchronized (this) {
+            pending.addAll(ids);
+        }
+        apply();
+    }
+
+    /**
+     * Reads back the rows changed since the last update in the background, unless a read is already in flight,
+     * in which case they are read once it completes. Called on the JavaFX application thread.
+     */
+
+    private void apply() {
+        Set<Integer> ids;
+        boolean reloadAll;
+        synchronized (this) {
+            scheduled = false;
+            if (loading) {
+                return;
+            }
+            ids = pending;
+            reloadAll = resync;
+            pending = new HashSet<>();
+            resync = false;
+        }
+        if (reloadAll) {
+            reload.run();
+        } else if (!ids.isEmpty()) {
+            loading = true;
+            tasks.submit(null, () -> loader.apply(ids), rows -> {
+                loading = false;
+                update(ids, rows);
+                apply();
+            }, e -> {
+                loading = false;
+                LOGGER.log(Level.WARNING, "Failed to apply changes to the " + tableName + " table: " + e.getMessage());
+                apply();
+            });
+        }
+    }
+
+    /**
+     * Replaces, removes or appends the rows that were read back.
+     *
+     * @param ids the IDs of the changed rows
+     * @param rows the rows that still exist, by ID
+     */
+
+    private void update(Collection<Integer> ids, Map<Integer, T> rows) {
+        ObservableList<T> items = table.getItems();
+        Set<Integer> missing = new TreeSet<>(ids);
+        for (int i = items.size() - 1; i >= 0; i--) {
+            int id = idOf.applyAsInt(items.get(i));
+            if (missing.remove(id)) {
+                T row = rows.get(id);
+                if (row == null) {
+                    items.remove(i);
+                } else {
+                    items.set(i, row);
+                }
+            }
+        }
+        for (int id : missing) {
+            T row = rows.get(id);
+            if (row != null && loaded.test(id)) {
+                Table.appendRows(table, List.of(row));
+                appended.accept(id);
+            }
+        }
+    }
+}
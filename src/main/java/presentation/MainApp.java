@@ -9,7 +9,6 @@ import javafx.stage.Stage;
 import businessLogic.ClientBLL;
 import businessLogic.ProductBLL;
 import businessLogic.OrderBLL;
-import java.sql.Connection;
 import connection.ConnectionFactory;
 
 /**
@@ -37,11 +36,10 @@ public class MainApp extends Application {
 
     @Override
     public void start(Stage primaryStage) {
-        Connection connection = ConnectionFactory.getConnection();
-        ClientBLL clientBLL = new ClientBLL(connection);
-        ProductBLL productBLL = new ProductBLL(connection);
-        OrderBLL orderBLL = new OrderBLL(connection);
-        BillBLL billBLL = new BillBLL(connection);
+        ClientBLL clientBLL = new ClientBLL();
+        ProductBLL productBLL = new ProductBLL();
+        OrderBLL orderBLL = new OrderBLL();
+        BillBLL billBLL = new BillBLL();
 
         TabPane tabPane = new TabPane();
 
@@ -56,4 +54,15 @@ public class MainApp extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
     }
+
+    /**
+     * Stops the application, cancelling the pending background calls of the windows, and closes the database
+     * connection pool.
+     */
+
+    @Override
+    public void stop() {
+        UiTasks.shutdown();
+        ConnectionFactory.shutdown();
+    }
 }
@@ -1,6 +1,7 @@
 package presentation;
 
 import businessLogic.*;
+import connection.ConnectionFactory;
 import dataModel.*;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
@@ -10,17 +11,22 @@ import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
 import javafx.scene.layout.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.function.ToIntFunction;
 
 /**
  * A JavaFX VBox for displaying orders in a TableView, with bill display.
  * Provides the functionality of placing orders.
+ * The window is refreshed incrementally: orders changed by any instance are updated in place as their change
+ * notifications arrive, and the combo boxes are only reloaded after their clients or products changed.
  */
 
 public class OrderWindow extends VBox {
+
+    private static final int PAGE_SIZE = 100;
+
     private final OrderBLL orderBLL;
     private final ClientBLL clientBLL;
     private final ProductBLL productBLL;
@@ -32,6 +38,14 @@ public class OrderWindow extends VBox {
     private final Button placeOrderButton = new Button("Place Order");
     private final TextArea billTextArea = new TextArea();
     private final TableView<OrderView> orderTable = new TableView<>();
+    private final Button loadMoreButton = new Button("Load More Orders");
+    private final ProgressIndicator progress = new ProgressIndicator();
+    private final UiTasks tasks = new UiTasks(progress);
+    private int lastOrderId;
+    private boolean allLoaded;
+    private final LiveRows<OrderView> orderRows;
+    private volatile boolean clientsChanged = true;
+    private volatile boolean productsChanged = true;
 
     /**
      * Constructs an OrderWindow with the specified business logic layers.
@@ -50,6 +64,11 @@ public class OrderWindow extends VBox {
 
         initUI();
         loadData();
+        this.orderRows = new LiveRows<>(orderTable, "order", OrderView::getId, orderBLL::getOrdersByIds,
+                id -> id <= lastOrderId || allLoaded,
+                id -> lastOrderId = Math.max(lastOrderId, id), this::reloadOrders, tasks);
+        ConnectionFactory.getChangeListener().subscribe(orderRows::onChange);
+        ConnectionFactory.getChangeListener().subscribe(this::onChange);
     }
 
     /**
@@ -87,49 +106,144 @@ public class OrderWindow extends VBox {
         billTextArea.setPrefWidth(500);
         billTextArea.setStyle("-fx-font-family: monospace;");
 
-        VBox inputBox = new VBox(10, inputGrid, placeOrderButton, refreshButton);
+        progress.setMaxSize(24, 24);
+        VBox inputBox = new VBox(10, inputGrid, placeOrderButton, new HBox(10, refreshButton, progress));
         inputBox.setPadding(new Insets(10));
         VBox billBox = new VBox(5, new Label("Order Bill:"), billTextArea);
         billBox.setPadding(new Insets(10));
         HBox hbox = new HBox(20, inputBox, billBox);
         hbox.setPadding(new Insets(10));
 
-        getChildren().addAll(hbox, tabPane);
+        loadMoreButton.setOnAction(e -> loadNextOrders());
+
+        getChildren().addAll(hbox, tabPane, loadMoreButton);
 
         orderTable.setOnMouseClicked(event -> {
             if (event.getClickCount() == 1) {
                 OrderView selectedOrder = orderTable.getSelectionModel().getSelectedItem();
                 if (selectedOrder != null) {
-                    Bill bill = billBLL.getBillById(selectedOrder.getId());
-                    displayBill(bill);
+                    tasks.submit("bill", () -> billBLL.getBillById(selectedOrder.getId()), this::displayBill,
+                            e -> showAlert("Error loading bill: " + e.getMessage(), Alert.AlertType.ERROR));
                 }
             }
         });
     }
 
     /**
-     * Loads clients, products and orders into the UI components.
+     * Brings the combo boxes and the orders table up to date without reloading what did not change.
+     * A combo box is reloaded only if its clients or products changed since it was last loaded.
+     * If all the pages of orders are loaded, the orders newer than the last one shown are appended to the table
+     * with a single query; otherwise they are loaded with the next pages.
+     * Everything is loaded in the background; a combo box whose items are still loading keeps its current items.
      */
 
     private void loadData() {
-        try {
-            List<Client> clients = clientBLL.getAllClients();
-            clientCombo.setItems(FXCollections.observableArrayList(clients));
-            if (!clients.isEmpty()) clientCombo.getSelectionModel().selectFirst();
-
-            List<Product> products = productBLL.getAllProducts();
-            productCombo.setItems(FXCollections.observableArrayList(products));
-            if (!products.isEmpty()) productCombo.getSelectionModel().selectFirst();
-
-            List<OrderView> orders = orderBLL.getAllOrders();
-            Table.createTable(orderTable, orders);
-        } catch (Exception e) {
-            showAlert("Error loading data: " + e.getMessage(), Alert.AlertType.ERROR);
+        if (clientsChanged) {
+            clientsChanged = false;
+            tasks.submit("clients", clientBLL::getAllClients,
+                    clients -> replaceItems(clientCombo, clients, Client::getId), e -> {
+                clientsChanged = true;
+                showAlert("Error loading clients: " + e.getMessage(), Alert.AlertType.ERROR);
+            });
+        }
+        if (productsChanged) {
+            productsChanged = false;
+            tasks.submit("products", productBLL::getAllProducts,
+                    products -> replaceItems(productCombo, products, Product::getId), e -> {
+                productsChanged = true;
+                showAlert("Error loading products: " + e.getMessage(), Alert.AlertType.ERROR);
+            });
+        }
+        if (!tasks.isPending("orders") && (orderTable.getItems().isEmpty() || allLoaded)) {
+            loadNextOrders();
         }
     }
 
     /**
-     * Places an order based on user input, creates a bill, and refreshes the UI.
+     * Replaces the items of a combo box, keeping the selected item selected if it still exists.
+     *
+     * @param combo the combo box
+     * @param items the new items
+     * @param idOf gets the ID of an item
+     * @param <T> the type of the items
+     */
+
+    private static <T> void replaceItems(ComboBox<T> combo, List<T> items, ToIntFunction<T> idOf) {
+        T selected = combo.getValue();
+        combo.setItems(FXCollections.observableArrayList(items));
+        combo.setValue(null);
+        if (selected != null) {
+            int id = idOf.applyAsInt(selected);
+            items.stream().filter(item -> idOf.applyAsInt(item) == id).findFirst().ifPresent(combo::setValue);
+        }
+        if (combo.getValue() == null && !items.isEmpty()) {
+            combo.getSelectionModel().selectFirst();
+        }
+    }
+
+    /**
+     * Records that the clients or products of the combo boxes changed, so the next refresh reloads them.
+     * Called on the listener thread.
+     *
+     * @param event the change event
+     */
+
+    private void onChange(ChangeEvent event) {
+        if (event.affects("client")) {
+            clientsChanged = true;
+        }
+        if (event.affects("product")) {
+            productsChanged = true;
+        }
+    }
+
+    /**
+     * Reloads the orders table from the first page of orders, superseding any page still loading.
+     */
+
+    private void reloadOrders() {
+        loadOrders(0, true);
+    }
+
+    /**
+     * Loads the next page of orders and appends it to the orders table.
+     */
+
+    private void loadNextOrders() {
+        loadOrders(lastOrderId, false);
+    }
+
+    /**
+     * Loads a page of orders from the BLL in the background and shows it in the orders table.
+     * The "Load More Orders" button is disabled while the page loads and once the last page was loaded.
+     *
+     * @param afterId the ID of the last order already shown, or 0 for the first page
+     * @param replace {@code true} to replace the rows of the table, {@code false} to append to them
+     */
+
+    private void loadOrders(int afterId, boolean replace) {
+        loadMoreButton.setDisable(true);
+        tasks.submit("orders", () -> orderBLL.getOrdersPage(afterId, PAGE_SIZE), orders -> {
+            if (replace) {
+                orderTable.getItems().clear();
+                lastOrderId = 0;
+            }
+            List<OrderView> fresh = orders.stream().filter(o -> o.getId() > lastOrderId).toList();
+            Table.appendRows(orderTable, fresh);
+            if (!fresh.isEmpty()) {
+                lastOrderId = fresh.get(fresh.size() - 1).getId();
+            }
+            allLoaded = orders.size() < PAGE_SIZE;
+            loadMoreButton.setDisable(allLoaded);
+        }, e -> {
+            loadMoreButton.setDisable(false);
+            showAlert("Error loading orders: " + e.getMessage(), Alert.AlertType.ERROR);
+        });
+    }
+
+    /**
+     * Places an order based on user input in the background, creates a bill, and refreshes the UI.
+     * The "Place Order" button is disabled until the order is placed, so it cannot be placed twice.
      */
 
     private void placeOrder() {
@@ -146,20 +260,22 @@ public class OrderWindow extends VBox {
             showAlert("Please select both client and product", Alert.AlertType.ERROR);
             return;
         }
-        try {
-            Order order = new Order(0, client.getId(), product.getId(), quantity, LocalDateTime.now());
-            Order savedOrder = orderBLL.placeOrder(order);
-            BigDecimal total = BigDecimal.valueOf(product.getPrice()).multiply(BigDecimal.valueOf(quantity));
-            Bill bill = new Bill(0, savedOrder.getId(), client.getName(), product.getProductName(), quantity, total, LocalDateTime.now());
-
+        Order order = new Order(0, client.getId(), product.getId(), quantity, LocalDateTime.now());
+        placeOrderButton.setDisable(true);
+        tasks.submit(null, () -> orderBLL.placeOrderWithBill(order), bill -> {
+            placeOrderButton.setDisable(false);
             displayBill(bill);
+            productsChanged = true;
             loadData();
             showAlert("Order placed successfully!", Alert.AlertType.INFORMATION);
-        } catch (UnderStockException e) {
-            showAlert("Under stock: " + e.getMessage(), Alert.AlertType.ERROR);
-        } catch (Exception e) {
-            showAlert("Error placing order: " + e.getMessage(), Alert.AlertType.ERROR);
-        }
+        }, e -> {
+            placeOrderButton.setDisable(false);
+            if (e instanceof UnderStockException) {
+                showAlert("Under stock: " + e.getMessage(), Alert.AlertType.ERROR);
+            } else {
+                showAlert("Error placing order: " + e.getMessage(), Alert.AlertType.ERROR);
+            }
+        });
     }
 
     /**
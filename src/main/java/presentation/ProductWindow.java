@@ -1,6 +1,7 @@
 package presentation;
 
 import businessLogic.ProductBLL;
+import connection.ConnectionFactory;
 import dataModel.Product;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
@@ -14,11 +15,21 @@ import java.util.Optional;
 /**
  * JavaFX BorderPane for displaying products in a TableView.
  * Provides functionalities like adding, editing and deleting products.
+ * Rows changed by this or any other instance are updated in place as their change notifications arrive.
  */
 
 public class ProductWindow extends BorderPane {
+
+    private static final int PAGE_SIZE = 100;
+
     private final ProductBLL productBLL;
     private TableView<Product> table = new TableView<>();
+    private final Button loadMoreButton = new Button("Load More");
+    private final ProgressIndicator progress = new ProgressIndicator();
+    private final UiTasks tasks = new UiTasks(progress);
+    private int lastProductId;
+    private boolean allLoaded;
+    private final LiveRows<Product> rows;
 
     /**
      * Constructs a ProductWindow with the specified business logic layer.
@@ -30,6 +41,10 @@ public class ProductWindow extends BorderPane {
         this.productBLL = productBLL;
         initUI();
         loadProducts();
+        this.rows = new LiveRows<>(table, "product", Product::getId, productBLL::findByIds,
+                id -> id <= lastProductId || allLoaded,
+                id -> lastProductId = Math.max(lastProductId, id), this::loadProducts, tasks);
+        ConnectionFactory.getChangeListener().subscribe(rows::onChange);
     }
 
     /**
@@ -43,7 +58,8 @@ public class ProductWindow extends BorderPane {
         Button editButton = new Button("Edit Product");
         Button deleteButton = new Button("Delete Product");
 
-        HBox buttonBox = new HBox(10, addButton, editButton, deleteButton);
+        progress.setMaxSize(24, 24);
+        HBox buttonBox = new HBox(10, addButton, editButton, deleteButton, loadMoreButton, progress);
         buttonBox.setPadding(new Insets(10));
         setBottom(buttonBox);
 
@@ -55,19 +71,51 @@ public class ProductWindow extends BorderPane {
             }
         });
         deleteButton.setOnAction(e -> deleteProduct());
+        loadMoreButton.setOnAction(e -> loadNextPage());
     }
 
     /**
-     * Loads all products from the business layer and populates the TableView.
+     * Reloads the table from the first page of products, superseding any page still loading.
      */
 
     private void loadProducts() {
-        try {
-            List<Product> products = productBLL.getAllProducts();
-            Table.createTable(table, products);
-        } catch (Exception e) {
+        loadPage(0, true);
+    }
+
+    /**
+     * Loads the next page of products and appends it to the table.
+     */
+
+    private void loadNextPage() {
+        loadPage(lastProductId, false);
+    }
+
+    /**
+     * Loads a page of products from the BLL in the background and shows it in the table.
+     * The "Load More" button is disabled while the page loads and once the last page was loaded.
+     *
+     * @param afterId the ID of the last product already shown, or 0 for the first page
+     * @param replace {@code true} to replace the rows of the table, {@code false} to append to them
+     */
+
+    private void loadPage(int afterId, boolean replace) {
+        loadMoreButton.setDisable(true);
+        tasks.submit("page", () -> productBLL.getProductsPage(afterId, PAGE_SIZE), products -> {
+            if (replace) {
+                table.getItems().clear();
+                lastProductId = 0;
+            }
+            List<Product> fresh = products.stream().filter(p -> p.getId() > lastProductId).toList();
+            Table.appendRows(table, fresh);
+            if (!fresh.isEmpty()) {
+                lastProductId = fresh.get(fresh.size() - 1).getId();
+            }
+            allLoaded = products.size() < PAGE_SIZE;
+            loadMoreButton.setDisable(allLoaded);
+        }, e -> {
+            loadMoreButton.setDisable(false);
             showAlert("Error loading products: " + e.getMessage());
-        }
+        });
     }
 
     /**
@@ -128,18 +176,11 @@ public class ProductWindow extends BorderPane {
         });
 
         Optional<Product> result = dialog.showAndWait();
-        result.ifPresent(productToSave -> {
-            try {
-                if (product == null) {
-                    productBLL.addProduct(productToSave);
-                } else {
-                    productBLL.updateProduct(productToSave, productToSave.getId());
-                }
-                loadProducts();
-            } catch (Exception e) {
-                showAlert("Error saving product: " + e.getMessage());
-            }
-        });
+        result.ifPresent(productToSave -> tasks.submit(null,
+                () -> product == null ? productBLL.addProduct(productToSave)
+                        : productBLL.updateProduct(productToSave, product),
+                saved -> rows.refresh(List.of(saved.getId())),
+                e -> showAlert("Error saving product: " + e.getMessage())));
     }
 
     /**
@@ -149,12 +190,10 @@ public class ProductWindow extends BorderPane {
     private void deleteProduct() {
         Product selected = table.getSelectionModel().getSelectedItem();
         if(selected != null) {
-            try {
+            tasks.submit(null, () -> {
                 productBLL.deleteProduct(selected.getId());
-                loadProducts();
-            } catch (Exception e) {
-                showAlert("Error deleting product: " + e.getMessage());
-            }
+                return selected.getId();
+            }, id -> rows.refresh(List.of(id)), e -> showAlert("Error deleting product: " + e.getMessage()));
         }
     }
 
@@ -13,9 +13,13 @@ import java.util.stream.Stream;
 
 public class Table {
 
+    /** The field that only serves optimistic locking and is not shown to the user. */
+    private static final String VERSION_FIELD = "version";
+
     /**
      * Creates a table to display data from the given list of items.
-     * Columns are generated using reflection, based on the fields of the object's class.
+     * Columns are generated using reflection, based on the fields of the object's class,
+     * except the version used for optimistic locking.
      *
      * @param tableView the TableView to configure
      * @param items the list of data items to display in the table
@@ -24,15 +28,28 @@ public class Table {
     public static <T> void createTable(TableView<T> tableView, List<T> items) {
         tableView.getItems().clear();
         tableView.getColumns().clear();
+        appendRows(tableView, items);
+    }
+
+    /**
+     * Appends the given items to the table, such as the next page of a paged table.
+     * The columns are generated from the first item if the table has none yet, except the version column.
+     *
+     * @param tableView the TableView to append to
+     * @param items the data items to append
+     */
 
+    public static <T> void appendRows(TableView<T> tableView, List<T> items) {
         if(items.isEmpty()) return;
 
-        Class<?> clazz = items.get(0).getClass();
-        Stream.of(clazz.getDeclaredFields()).map(field -> {
-            TableColumn<T, Object> column = new TableColumn<>(field.getName());
-            column.setCellValueFactory(new PropertyValueFactory<>(field.getName()));
-            return column;
-        }).forEach(tableView.getColumns()::add);
+        if(tableView.getColumns().isEmpty()) {
+            Class<?> clazz = items.get(0).getClass();
+            Stream.of(clazz.getDeclaredFields()).filter(field -> !field.getName().equals(VERSION_FIELD)).map(field -> {
+                TableColumn<T, Object> column = new TableColumn<>(field.getName());
+                column.setCellValueFactory(new PropertyValueFactory<>(field.getName()));
+                return column;
+            }).forEach(tableView.getColumns()::add);
+        }
         tableView.getItems().addAll(items);
     }
 }
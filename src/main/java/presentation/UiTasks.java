@@ -0,0 +1,144 @@
+package presentation;
+
+import connection.ConnectionFactory;
+import javafx.application.Platform;
+import javafx.scene.control.ProgressIndicator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the business logic calls of a window on background threads, so the JavaFX application thread never waits
+ * for the database, and hands their results back to it with {@link Platform#runLater}.
+ * Java 17 has no virtual threads, so the calls share a small pool of {@code ui.backgroundThreads} daemon threads;
+ * each call holds a pooled connection while it runs, so more threads than {@code db.pool.maxSize} would only wait.
+ * A call submitted under a key supersedes the call still pending under the same key: the older call is cancelled
+ * if it has not started yet, and its result is discarded otherwise. The progress indicator of the window is shown
+ * while any of its calls is pending.
+ * Every method must be called on the JavaFX application thread.
+ */
+
+final class UiTasks {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    /**
+     * A call that was submitted and whose result was not applied yet.
+     *
+     * @param token identifies the submission, to recognize superseded results
+     * @param future the running or queued call
+     */
+
+    private record Submission(Object token, Future<?> future) {
+    }
+
+    private final ProgressIndicator progress;
+    private final Map<Object, Submission> pending = new HashMap<>();
+
+    /**
+     * Constructs a UiTasks.
+     *
+     * @param progress the progress indicator shown while calls are pending
+     */
+
+    UiTasks(ProgressIndicator progress) {
+        this.progress = progress;
+        progress.setVisible(false);
+    }
+
+    /**
+     * Runs a call in the background and applies its result on the JavaFX application thread.
+     *
+     * @param key the key of the call, whose pending call it supersedes, or null if it supersedes nothing
+     * @param work the call, such as a business logic method
+     * @param onSuccess applies the result of the call
+     * @param onFailure handles the exception thrown by the call
+     * @param <T> the type of the result
+     */
+
+    <T> void submit(String key, Callable<T> work, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        Object slot = key != null ? key : new Object();
+        Object token = new Object();
+        Submission superseded = pending.get(slot);
+        if (superseded != null) {
+            superseded.future().cancel(false);
+        }
+        Future<?> future = EXECUTOR.submit(() -> {
+            try {
+                T result = work.call();
+                Platform.runLater(() -> {
+                    if (finish(slot, token)) {
+                        onSuccess.accept(result);
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (finish(slot, token)) {
+                        onFailure.accept(e);
+                    }
+                });
+            }
+        });
+        pending.put(slot, new Submission(token, future));
+        progress.setVisible(true);
+    }
+
+    /**
+     * Checks whether a call submitted under the given key is pending.
+     *
+     * @param key the key of the call
+     * @return {@code true} if the call is running or queued
+     */
+
+    boolean isPending(String key) {
+        return pending.containsKey(key);
+    }
+
+    /**
+     * Removes a finished call from the pending calls, unless it was superseded.
+     *
+     * @param slot the key the call was submitted under
+     * @param token the token of the submission
+     * @return {@code true} if the result of the call should be applied
+     */
+
+    private boolean finish(Object slot, Object token) {
+        Submission submission = pending.get(slot);
+        if (submission == null || submission.token() != token) {
+            return false;
+        }
+        pending.remove(slot);
+        progress.setVisible(!pending.isEmpty());
+        return true;
+    }
+
+    /**
+     * Stops the background threads, cancelling the calls that have not started.
+     */
+
+    static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * Creates the pool of daemon threads the calls of every window run on.
+     *
+     * @return the executor
+     */
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, ConnectionFactory.getIntProperty("ui.backgroundThreads", 4)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ui-background-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
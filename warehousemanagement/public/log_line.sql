@@ -0,0 +1,19 @@
+create table log_line
+(
+    id           serial
+        primary key,
+    log_id       integer        not null
+        constraint log_line_log_id_fkey
+            references log
+            on delete cascade,
+    line_no      integer        not null,
+    product_name varchar(100)   not null,
+    quantity     integer        not null,
+    unit_price   numeric(10, 2) not null,
+    total_price  numeric(10, 2) not null,
+    constraint log_line_log_id_line_no_key
+        unique (log_id, line_no)
+);
+
+alter table log_line
+    owner to postgres;
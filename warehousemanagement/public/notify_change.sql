@@ -0,0 +1,164 @@
+create function notify_rows(table_name text, operation text, ids integer[]) returns void
+    language plpgsql
+as
+$$
+BEGIN
+    IF COALESCE(cardinality(ids), 0) = 0 THEN
+        RETURN;
+    END IF;
+    IF cardinality(ids) > 500 THEN
+        PERFORM pg_notify('warehouse_changes', table_name || ':RESYNC:0');
+    ELSE
+        PERFORM pg_notify('warehouse_changes', table_name || ':' || operation || ':' || array_to_string(ids, ','));
+    END IF;
+END;
+$$;
+
+alter function notify_rows(text, text, integer[]) owner to postgres;
+
+create function notify_change() returns trigger
+    language plpgsql
+as
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM notify_rows(TG_TABLE_NAME, TG_OP, (SELECT array_agg(DISTINCT id) FROM new_rows));
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM notify_rows(TG_TABLE_NAME, TG_OP, (SELECT array_agg(DISTINCT id) FROM old_rows));
+    ELSIF TG_TABLE_NAME = 'product' THEN
+        PERFORM notify_rows(TG_TABLE_NAME, 'STOCK', (
+            SELECT array_agg(DISTINCT n.id) FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE (n.product_name, n.price, n.version) = (o.product_name, o.price, o.version)));
+        PERFORM notify_rows(TG_TABLE_NAME, TG_OP, (
+            SELECT array_agg(DISTINCT n.id) FROM new_rows n LEFT JOIN old_rows o ON o.id = n.id
+            WHERE o.id IS NULL OR (n.product_name, n.price, n.version) <> (o.product_name, o.price, o.version)));
+    ELSE
+        PERFORM notify_rows(TG_TABLE_NAME, TG_OP, (SELECT array_agg(DISTINCT id) FROM new_rows));
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+alter function notify_change() owner to postgres;
+
+create trigger client_notify_insert
+    after insert
+    on client
+    referencing new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger client_notify_update
+    after update
+    on client
+    referencing old table as old_rows new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger client_notify_delete
+    after delete
+    on client
+    referencing old table as old_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger product_notify_insert
+    after insert
+    on product
+    referencing new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger product_notify_update
+    after update
+    on product
+    referencing old table as old_rows new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger product_notify_delete
+    after delete
+    on product
+    referencing old table as old_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger order_notify_insert
+    after insert
+    on "order"
+    referencing new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger order_notify_update
+    after update
+    on "order"
+    referencing old table as old_rows new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger order_notify_delete
+    after delete
+    on "order"
+    referencing old table as old_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger log_notify_insert
+    after insert
+    on log
+    referencing new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger log_notify_update
+    after update
+    on log
+    referencing old table as old_rows new table as new_rows
+    for each statement
+execute procedure notify_change();
+
+create trigger log_notify_delete
+    after delete
+    on log
+    referencing old table as old_rows
+    for each statement
+execute procedure notify_change();
+
+create function notify_shard_change() returns trigger
+    language plpgsql
+as
+$$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM notify_rows('product', 'STOCK', (SELECT array_agg(DISTINCT product_id) FROM old_rows));
+    ELSE
+        PERFORM notify_rows('product', 'STOCK', (SELECT array_agg(DISTINCT product_id) FROM new_rows));
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+alter function notify_shard_change() owner to postgres;
+
+create trigger product_stock_shard_notify_insert
+    after insert
+    on product_stock_shard
+    referencing new table as new_rows
+    for each statement
+execute procedure notify_shard_change();
+
+create trigger product_stock_shard_notify_update
+    after update
+    on product_stock_shard
+    referencing new table as new_rows
+    for each statement
+execute procedure notify_shard_change();
+
+create trigger product_stock_shard_notify_delete
+    after delete
+    on product_stock_shard
+    referencing old table as old_rows
+    for each statement
+execute procedure notify_shard_change();
+
@@ -7,7 +7,7 @@ create table "order"
         constraint orders_client_id_fkey
             references client
             on delete cascade,
-    product_id integer                                              not null
+    product_id integer
         constraint orders_product_id_fkey
             references product
             on delete cascade,
@@ -0,0 +1,23 @@
+create table order_line
+(
+    id         serial
+        primary key,
+    order_id   integer        not null
+        constraint order_line_order_id_fkey
+            references "order"
+            on delete cascade,
+    line_no    integer        not null,
+    product_id integer        not null
+        constraint order_line_product_id_fkey
+            references product
+            on delete cascade,
+    quantity   integer        not null
+        constraint order_line_quantity_check
+            check (quantity > 0),
+    unit_price numeric(10, 2) not null,
+    constraint order_line_order_id_line_no_key
+        unique (order_id, line_no)
+);
+
+alter table order_line
+    owner to postgres;
@@ -9,7 +9,8 @@ create table product
             check (price > (0)::numeric),
     current_stock integer        not null
         constraint product_current_stock_check
-            check (current_stock >= 0)
+            check (current_stock >= 0),
+    version       integer        default 0 not null
 );
 
 alter table product
@@ -0,0 +1,16 @@
+create table product_stock_shard
+(
+    product_id integer not null
+        constraint product_stock_shard_product_id_fkey
+            references product
+            on delete cascade,
+    shard      integer not null,
+    stock      integer not null
+        constraint product_stock_shard_stock_check
+            check (stock >= 0),
+    constraint product_stock_shard_pkey
+        primary key (product_id, shard)
+);
+
+alter table product_stock_shard
+    owner to postgres;
@@ -0,0 +1,24 @@
+create table stock_reservation
+(
+    token       uuid                                not null
+        primary key,
+    product_id  integer                             not null
+        constraint stock_reservation_product_id_fkey
+            references product
+            on delete cascade,
+    quantity    integer                             not null
+        constraint stock_reservation_quantity_check
+            check (quantity > 0),
+    created_at  timestamp default CURRENT_TIMESTAMP not null,
+    expires_at  timestamp                           not null,
+    from_shards boolean   default false             not null
+);
+
+alter table stock_reservation
+    owner to postgres;
+
+create index stock_reservation_product_id_expires_at_index
+    on stock_reservation (product_id, expires_at) include (quantity);
+
+create index stock_reservation_expires_at_index
+    on stock_reservation (expires_at);